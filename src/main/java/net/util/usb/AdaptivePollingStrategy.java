@@ -0,0 +1,48 @@
+package net.util.usb;
+
+/**
+ * Min interval during burst window after the last change, then interval grows
+ * by multiplier on each check up to max interval.
+ */
+class AdaptivePollingStrategy implements PollingStrategy {
+
+	private final long minInterval;
+
+	private final long maxInterval;
+
+	private final double multiplier;
+
+	private final long burstWindow;
+
+	private long lastChange;
+
+	private long interval;
+
+	AdaptivePollingStrategy(long minInterval, long maxInterval, double multiplier, long burstWindow) {
+		if (minInterval <= 0 || maxInterval < minInterval) {
+			throw new IllegalArgumentException("wrong bounds: " + minInterval + ".." + maxInterval);
+		}
+		if (multiplier < 1) {
+			throw new IllegalArgumentException("multiplier should be >= 1: " + multiplier);
+		}
+		this.minInterval = minInterval;
+		this.maxInterval = maxInterval;
+		this.multiplier = multiplier;
+		this.burstWindow = burstWindow;
+		this.interval = minInterval;
+		//first checks find already connected devices, so start in burst
+		this.lastChange = System.nanoTime() / 1_000_000;
+	}
+
+	@Override
+	public long nextDelay(boolean changed) {
+		long now = System.nanoTime() / 1_000_000;
+		if (changed) {
+			lastChange = now;
+			interval = minInterval;
+		} else if (now - lastChange >= burstWindow) {
+			interval = Math.min(maxInterval, Math.round(interval * multiplier));
+		}
+		return interval;
+	}
+}
@@ -0,0 +1,111 @@
+package net.util.usb;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Delays between attempts of port detection. Just mounted device is often not visible
+ * to system_profiler or registry yet, so attempts are spread in time instead of run back-to-back.
+ */
+public class BackoffPolicy {
+
+	private int maxAttempts = 6;
+
+	private long initialDelay = 250;
+
+	private double multiplier = 2;
+
+	private long maxDelay = 4000;
+
+	private double jitter = 0.2;
+
+	private int lateAttempts = 3;
+
+	private long lateInterval = 30_000;
+
+	/**
+	 * @param attempt number of failed attempts, starting from 1
+	 * @return delay before next attempt in milliseconds
+	 */
+	public long delay(int attempt) {
+		double delay = Math.min(maxDelay, initialDelay * Math.pow(multiplier, attempt - 1));
+		if (jitter > 0) {
+			delay *= 1 + jitter * (ThreadLocalRandom.current().nextDouble() * 2 - 1);
+		}
+		return Math.max(0, Math.round(delay));
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * @param maxAttempts attempts before device is marked as failed
+	 */
+	public BackoffPolicy setMaxAttempts(int maxAttempts) {
+		this.maxAttempts = maxAttempts;
+		return this;
+	}
+
+	public long getInitialDelay() {
+		return initialDelay;
+	}
+
+	/**
+	 * @param initialDelay delay after first failed attempt in milliseconds
+	 */
+	public BackoffPolicy setInitialDelay(long initialDelay) {
+		this.initialDelay = initialDelay;
+		return this;
+	}
+
+	public double getMultiplier() {
+		return multiplier;
+	}
+
+	public BackoffPolicy setMultiplier(double multiplier) {
+		this.multiplier = multiplier;
+		return this;
+	}
+
+	public long getMaxDelay() {
+		return maxDelay;
+	}
+
+	public BackoffPolicy setMaxDelay(long maxDelay) {
+		this.maxDelay = maxDelay;
+		return this;
+	}
+
+	public double getJitter() {
+		return jitter;
+	}
+
+	/**
+	 * @param jitter delay is randomly changed by this fraction, i.e. 0.2 is +-20%
+	 */
+	public BackoffPolicy setJitter(double jitter) {
+		this.jitter = jitter;
+		return this;
+	}
+
+	public int getLateAttempts() {
+		return lateAttempts;
+	}
+
+	/**
+	 * @param lateAttempts attempts for failed device which is still connected, CONNECTED is fired if one of them succeeds
+	 */
+	public BackoffPolicy setLateAttempts(int lateAttempts) {
+		this.lateAttempts = lateAttempts;
+		return this;
+	}
+
+	public long getLateInterval() {
+		return lateInterval;
+	}
+
+	public BackoffPolicy setLateInterval(long lateInterval) {
+		this.lateInterval = lateInterval;
+		return this;
+	}
+}
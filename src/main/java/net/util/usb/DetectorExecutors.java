@@ -0,0 +1,99 @@
+package net.util.usb;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executors shared by all detectors, so several detectors in one JVM do not multiply threads.
+ * All threads are daemons and are released when idle.
+ */
+public final class DetectorExecutors {
+	private static final Logger LOG = LoggerFactory.getLogger(DetectorExecutors.class);
+
+	private static final int RESOLVER_THREADS = 4;
+
+	private DetectorExecutors() {
+	}
+
+	/**
+	 * @return scheduler which runs polling and retries of port detection, it never blocks
+	 */
+	public static ScheduledExecutorService scheduler() {
+		return Holder.SCHEDULER;
+	}
+
+	/**
+	 * @return executor which calls listeners
+	 */
+	public static ExecutorService dispatcher() {
+		return Holder.DISPATCHER;
+	}
+
+	/**
+	 * @return bounded executor for blocking work: running commands and parsing their output
+	 */
+	public static ExecutorService resolver() {
+		return Holder.RESOLVER;
+	}
+
+	/**
+	 * @return executor which starts virtual thread per task or null if JVM does not support them (before Java 21)
+	 */
+	public static ExecutorService virtualThreads() {
+		return VirtualHolder.VIRTUAL;
+	}
+
+	static ThreadFactory daemon(String name) {
+		return r -> {
+			Thread thread = new Thread(r, name);
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	private static class Holder {
+		private static final ScheduledExecutorService SCHEDULER;
+		static {
+			ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, daemon("usb-detector-scheduler"));
+			scheduler.setRemoveOnCancelPolicy(true);
+			//stopped detectors have nothing scheduled, so thread is released
+			scheduler.setKeepAliveTime(30, TimeUnit.SECONDS);
+			scheduler.allowCoreThreadTimeOut(true);
+			SCHEDULER = scheduler;
+		}
+
+		private static final ExecutorService DISPATCHER = Executors.newCachedThreadPool(daemon("usb-detector-dispatch"));
+
+		private static final ExecutorService RESOLVER;
+		static {
+			ThreadPoolExecutor resolver = new ThreadPoolExecutor(RESOLVER_THREADS, RESOLVER_THREADS, 30, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<>(), daemon("usb-detector-resolver"));
+			resolver.allowCoreThreadTimeOut(true);
+			RESOLVER = resolver;
+		}
+	}
+
+	private static class VirtualHolder {
+		private static final ExecutorService VIRTUAL;
+		static {
+			ExecutorService virtual = null;
+			try {
+				Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+				virtual = (ExecutorService) factory.invoke(null);
+			} catch (ReflectiveOperationException | RuntimeException e) {
+				LOG.debug("Virtual threads are not available");
+			}
+			VIRTUAL = virtual;
+		}
+	}
+}
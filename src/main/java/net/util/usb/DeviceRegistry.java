@@ -0,0 +1,87 @@
+package net.util.usb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Connected devices indexed by root, port and volume id. Index is immutable and replaced on every change,
+ * so reads are lock-free O(1) lookups in a consistent snapshot. Devices change rarely, so rebuilding is cheap.
+ */
+class DeviceRegistry {
+
+	private volatile Index index = new Index(new LinkedHashMap<>());
+
+	/**
+	 * Adds device or replaces device with the same root
+	 */
+	synchronized void put(USBDevice device) {
+		Map<File, USBDevice> byRoot = new LinkedHashMap<>(index.byRoot);
+		byRoot.put(device.getRootDirectory(), device);
+		index = new Index(byRoot);
+	}
+
+	synchronized void remove(File root) {
+		if (!index.byRoot.containsKey(root)) {
+			return;
+		}
+		Map<File, USBDevice> byRoot = new LinkedHashMap<>(index.byRoot);
+		byRoot.remove(root);
+		index = new Index(byRoot);
+	}
+
+	synchronized void clear() {
+		index = new Index(new LinkedHashMap<>());
+	}
+
+	USBDevice findByRoot(File root) {
+		return index.byRoot.get(root);
+	}
+
+	List<USBDevice> findByPort(String port) {
+		return index.byPort.getOrDefault(port, Collections.emptyList());
+	}
+
+	List<USBDevice> findByVolumeId(String volumeId) {
+		return index.byVolumeId.getOrDefault(volumeId, Collections.emptyList());
+	}
+
+	/**
+	 * @return devices in order of connection
+	 */
+	List<USBDevice> getDevices() {
+		return index.devices;
+	}
+
+	private static class Index {
+		private final Map<File, USBDevice> byRoot;
+		private final Map<String, List<USBDevice>> byPort;
+		private final Map<String, List<USBDevice>> byVolumeId;
+		private final List<USBDevice> devices;
+
+		Index(Map<File, USBDevice> byRoot) {
+			this.byRoot = Collections.unmodifiableMap(byRoot);
+			this.devices = Collections.unmodifiableList(new ArrayList<>(byRoot.values()));
+
+			//device with several partitions has several roots on the same port
+			Map<String, List<USBDevice>> byPort = new HashMap<>();
+			Map<String, List<USBDevice>> byVolumeId = new HashMap<>();
+			for (USBDevice device : devices) {
+				if (device.getPort() != null && !device.getPort().isEmpty()) {
+					byPort.computeIfAbsent(device.getPort(), p -> new ArrayList<>(1)).add(device);
+				}
+				if (device.getVolumeId() != null) {
+					byVolumeId.computeIfAbsent(device.getVolumeId(), v -> new ArrayList<>(1)).add(device);
+				}
+			}
+			byPort.replaceAll((port, list) -> Collections.unmodifiableList(list));
+			byVolumeId.replaceAll((volumeId, list) -> Collections.unmodifiableList(list));
+			this.byPort = byPort;
+			this.byVolumeId = byVolumeId;
+		}
+	}
+}
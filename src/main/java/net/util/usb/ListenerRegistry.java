@@ -0,0 +1,288 @@
+package net.util.usb;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.util.usb.metrics.DetectorMetrics;
+
+/**
+ * Copy-on-write set of listeners. Every listener has own bounded queue which is drained on
+ * shared executor, so slow listener delays only itself. Events are delivered to each listener
+ * in order they were fired.
+ *
+ * @param <L> listener
+ * @param <E> event
+ */
+class ListenerRegistry<L, E> {
+	private static final Logger LOG = LoggerFactory.getLogger(ListenerRegistry.class);
+
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	/**
+	 * events delivered in one run before executor thread is given to other listeners
+	 */
+	private static final int BATCH = 64;
+
+	private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+	private final Executor executor;
+
+	private final BiConsumer<L, E> invoker;
+
+	/**
+	 * events with the same key are coalesced
+	 */
+	private final Function<E, Object> coalesceKey;
+
+	private final DetectorMetrics metrics;
+
+	ListenerRegistry(Executor executor, BiConsumer<L, E> invoker, Function<E, Object> coalesceKey, DetectorMetrics metrics) {
+		this.executor = executor;
+		this.invoker = invoker;
+		this.coalesceKey = coalesceKey;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @return false in case if listener already added
+	 */
+	boolean add(L listener, OverflowPolicy policy, int capacity) {
+		Objects.requireNonNull(listener);
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity should be positive: " + capacity);
+		}
+		synchronized (subscriptions) {
+			if (contains(listener)) {
+				return false;
+			}
+			return subscriptions.add(new Subscription(listener, policy, capacity));
+		}
+	}
+
+	/**
+	 * Events which are not delivered yet are dropped
+	 */
+	boolean remove(L listener) {
+		for (Subscription subscription : subscriptions) {
+			if (subscription.listener.equals(listener) && subscriptions.remove(subscription)) {
+				subscription.close();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	boolean contains(L listener) {
+		for (Subscription subscription : subscriptions) {
+			if (subscription.listener.equals(listener)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	boolean isEmpty() {
+		return subscriptions.isEmpty();
+	}
+
+	List<L> getListeners() {
+		List<L> listeners = new ArrayList<>(subscriptions.size());
+		subscriptions.forEach(s -> listeners.add(s.listener));
+		return listeners;
+	}
+
+	Map<L, ListenerStats> getStats() {
+		Map<L, ListenerStats> stats = new LinkedHashMap<>();
+		subscriptions.forEach(s -> stats.put(s.listener, s.stats()));
+		return stats;
+	}
+
+	void fire(E event) {
+		for (Subscription subscription : subscriptions) {
+			subscription.offer(event);
+		}
+	}
+
+	private static class Entry<E> {
+		private final E event;
+		private final long enqueued;
+
+		Entry(E event, long enqueued) {
+			this.event = event;
+			this.enqueued = enqueued;
+		}
+	}
+
+	private class Subscription implements Runnable {
+		private final L listener;
+		private final OverflowPolicy policy;
+		private final int capacity;
+
+		private final ArrayDeque<Entry<E>> queue = new ArrayDeque<>();
+		private final ReentrantLock lock = new ReentrantLock();
+		private final Condition notFull = lock.newCondition();
+
+		private boolean scheduled;
+		private boolean closed;
+
+		private long delivered;
+		private long dropped;
+		private long coalesced;
+
+		Subscription(L listener, OverflowPolicy policy, int capacity) {
+			this.listener = listener;
+			this.policy = policy;
+			this.capacity = capacity;
+		}
+
+		void offer(E event) {
+			boolean schedule = false;
+			lock.lock();
+			try {
+				if (closed) {
+					return;
+				}
+
+				if (policy == OverflowPolicy.COALESCE && coalesce(event)) {
+					return;
+				}
+
+				while (queue.size() >= capacity && !closed) {
+					if (policy == OverflowPolicy.BLOCK) {
+						try {
+							notFull.await(100, TimeUnit.MILLISECONDS);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							dropped++;
+							return;
+						}
+					} else {
+						queue.pollFirst();
+						dropped++;
+					}
+				}
+				if (closed) {
+					return;
+				}
+
+				queue.addLast(new Entry<>(event, System.nanoTime()));
+				if (!scheduled) {
+					scheduled = true;
+					schedule = true;
+				}
+			} finally {
+				lock.unlock();
+			}
+
+			if (schedule) {
+				submit();
+			}
+		}
+
+		/**
+		 * @return true if event has replaced queued event with the same key
+		 */
+		private boolean coalesce(E event) {
+			Object key = coalesceKey.apply(event);
+			for (Iterator<Entry<E>> it = queue.iterator(); it.hasNext();) {
+				Entry<E> entry = it.next();
+				if (Objects.equals(key, coalesceKey.apply(entry.event))) {
+					it.remove();
+					//keeps time of the first event, so lag is not hidden by coalescing
+					queue.addLast(new Entry<>(event, entry.enqueued));
+					coalesced++;
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private void submit() {
+			try {
+				executor.execute(this);
+			} catch (RejectedExecutionException e) {
+				LOG.debug("Dispatch executor is stopped");
+				lock.lock();
+				try {
+					scheduled = false;
+				} finally {
+					lock.unlock();
+				}
+			}
+		}
+
+		@Override
+		public void run() {
+			for (int i = 0; i < BATCH; i++) {
+				Entry<E> entry;
+				lock.lock();
+				try {
+					entry = closed ? null : queue.pollFirst();
+					if (entry == null) {
+						scheduled = false;
+						return;
+					}
+					notFull.signalAll();
+				} finally {
+					lock.unlock();
+				}
+
+				long start = System.nanoTime();
+				try {
+					invoker.accept(listener, entry.event);
+				} catch (RuntimeException e) {
+					LOG.error("Listener " + listener + " failed on " + entry.event, e);
+				}
+				metrics.recordDispatch(System.nanoTime() - start);
+
+				lock.lock();
+				try {
+					delivered++;
+				} finally {
+					lock.unlock();
+				}
+			}
+
+			//let other listeners use the thread
+			submit();
+		}
+
+		void close() {
+			lock.lock();
+			try {
+				closed = true;
+				queue.clear();
+				notFull.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		ListenerStats stats() {
+			lock.lock();
+			try {
+				Entry<E> oldest = queue.peekFirst();
+				long lag = oldest == null ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - oldest.enqueued);
+				return new ListenerStats(queue.size(), capacity, lag, delivered, dropped, coalesced);
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package net.util.usb;
+
+/**
+ * State of dispatch queue of one listener
+ */
+public class ListenerStats {
+
+	private final int depth;
+	private final int capacity;
+	private final long lagMillis;
+	private final long delivered;
+	private final long dropped;
+	private final long coalesced;
+
+	ListenerStats(int depth, int capacity, long lagMillis, long delivered, long dropped, long coalesced) {
+		this.depth = depth;
+		this.capacity = capacity;
+		this.lagMillis = lagMillis;
+		this.delivered = delivered;
+		this.dropped = dropped;
+		this.coalesced = coalesced;
+	}
+
+	/**
+	 * @return count of events waiting for the listener
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return age of the oldest waiting event in milliseconds, 0 if queue is empty
+	 */
+	public long getLagMillis() {
+		return lagMillis;
+	}
+
+	public long getDelivered() {
+		return delivered;
+	}
+
+	public long getDropped() {
+		return dropped;
+	}
+
+	public long getCoalesced() {
+		return coalesced;
+	}
+
+	@Override
+	public String toString() {
+		return "ListenerStats [depth=" + depth + ", capacity=" + capacity + ", lagMillis=" + lagMillis + ", delivered="
+				+ delivered + ", dropped=" + dropped + ", coalesced=" + coalesced + "]";
+	}
+}
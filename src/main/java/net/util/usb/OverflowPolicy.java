@@ -0,0 +1,23 @@
+package net.util.usb;
+
+/**
+ * What to do with new event when queue of the listener is full
+ */
+public enum OverflowPolicy {
+	/**
+	 * wait until listener takes next event. Use only with listeners which never stall:
+	 * events are fired from the scheduler shared by all detectors of the JVM, so a full queue
+	 * stops polling and port detection of every detector until the listener catches up
+	 */
+	BLOCK,
+
+	/**
+	 * drop the oldest queued event
+	 */
+	DROP_OLDEST,
+
+	/**
+	 * replace queued event of the same device (or state) with new one, drop the oldest one if there is no such event
+	 */
+	COALESCE
+}
@@ -2,69 +2,352 @@ package net.util.usb;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
-import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.SystemUtils;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class PollingJob extends Thread {
+import net.util.usb.metrics.DetectorMetrics;
+import net.util.usb.port.linux.LinuxMountSource;
+import net.util.usb.port.linux.UdevMonitor;
+
+/**
+ * Lists roots of removable devices and notifies about connected and disconnected ones.
+ * Each check runs as a task on the scheduler (shared by all detectors by default) and schedules the next one.
+ * In watch mode checks are triggered by file system events instead, on Linux they can be triggered by udev events.
+ */
+public class PollingJob {
 
 	private static final Logger LOG = LoggerFactory.getLogger(PollingJob.class);
     private static final String VOLUMES_PATH = "/Volumes";
 
-	private final List<DevicePathEventListener> listeners = new ArrayList<>();
+    /**
+     * mtime granularity of HFS+ is one second
+     */
+    private static final long RACY_MILLIS = 2000;
+
+    /**
+     * device is mounted some time after udev has reported it, so roots are checked for a while after each event
+     */
+    private static final long SETTLE_MILLIS = 2000;
+
+    private static final long SETTLE_INTERVAL = 50;
+
+	private final CopyOnWriteArrayList<DevicePathEventListener> listeners = new CopyOnWriteArrayList<>();
+
+	private final ScheduledExecutorService scheduler;
+
+	private final DetectorMetrics metrics;
+
+	private volatile long pollingInterval;
+
+	private volatile PollingStrategy pollingStrategy;
+
+	private final RootTable roots = new RootTable(this::fire);
+
+	/**
+	 * roots are forgotten by checking thread, table is not touched by others
+	 */
+	private volatile boolean resetRequested;
+
+	private final File volumes = new File(VOLUMES_PATH);
+
+	private long volumesModified;
+
+	private long volumesListed;
+
+	private final Runnable checkTask = this::check;
 
-	private long pollingInterval;
+	private final LinuxMountSource linuxMounts = SystemUtils.IS_OS_LINUX ? new LinuxMountSource() : null;
 
-	private File[] lastRoots;
+	private volatile boolean watchEnabled;
+
+	private volatile RootsWatcher watcher;
+
+	private volatile boolean udevEnabled;
+
+	private volatile UdevMonitor udev;
+
+	private volatile List<String> udevCommand = UdevMonitor.DEFAULT_COMMAND;
+
+	private volatile long settleUntil;
+
+	private boolean started;
+
+	private boolean closed;
+
+	private boolean running;
+
+	private boolean rerun;
+
+	private ScheduledFuture<?> next;
 
 	public PollingJob() {
-		this.lastRoots = new File[0];
-		setDaemon(true);
+		this(DetectorExecutors.scheduler());
+	}
+
+	/**
+	 * @param scheduler runs checks, can be shared with other jobs
+	 */
+	public PollingJob(ScheduledExecutorService scheduler) {
+		this(scheduler, new DetectorMetrics());
+	}
+
+	PollingJob(ScheduledExecutorService scheduler, DetectorMetrics metrics) {
+		this.scheduler = scheduler;
+		this.metrics = metrics;
+		this.pollingStrategy = PollingStrategy.fixed(pollingInterval);
+	}
+
+	/**
+	 * Starts checking of roots. Nothing is checked while there are no listeners
+	 *
+	 * @throws IllegalStateException if job is closed
+	 */
+	public void start() {
+		synchronized (this) {
+			if (closed) {
+				throw new IllegalStateException("Polling job is closed");
+			}
+			if (started) {
+				return;
+			}
+			started = true;
+		}
+		//schedules first check too
+		updateWatch();
+	}
+
+	/**
+	 * Stops checking of roots, nothing is scheduled and watched after this method returns.
+	 * Job can be started again
+	 */
+	public void stop() {
+		synchronized (this) {
+			started = false;
+			if (next != null) {
+				next.cancel(false);
+				next = null;
+			}
+		}
+		updateWatch();
+	}
+
+	/**
+	 * Stops job forever
+	 */
+	public void close() {
+		synchronized (this) {
+			closed = true;
+		}
+		stop();
+	}
+
+	public synchronized boolean isStarted() {
+		return started;
 	}
 
 	/**
 	 * drop all stored roots - after this system will check all ports for all devices
 	 */
 	public void resetRoots() {
-		lastRoots = new File[0];
+		clearRoots();
+		requestCheck();
 	}
-	
-	@Override
-	public void run() {
-		while (true) {
-			try {
-				Thread.sleep(pollingInterval);
-
-				if (listeners.isEmpty()) {
-					lastRoots = new File[0];
-					continue;
+
+	private void clearRoots() {
+		resetRequested = true;
+	}
+
+	/**
+	 * Makes polling job to re-list roots now, even if it is waiting for watch events
+	 */
+	private synchronized void requestCheck() {
+		if (!started) {
+			return;
+		}
+		if (running) {
+			rerun = true;
+			return;
+		}
+		schedule(0);
+	}
+
+	/**
+	 * Only one check is scheduled at a time, previous one is cancelled
+	 */
+	private void schedule(long delay) {
+		if (next != null) {
+			next.cancel(false);
+		}
+		try {
+			next = scheduler.schedule(checkTask, delay, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			LOG.debug("Scheduler is stopped, polling job is not scheduled");
+			next = null;
+		}
+	}
+
+	/**
+	 * One check of roots. Next check is scheduled after polling interval,
+	 * or not scheduled at all while mount directories are watched
+	 */
+	private void check() {
+		synchronized (this) {
+			if (running) {
+				rerun = true;
+				return;
+			}
+			running = true;
+		}
+
+		boolean changed = false;
+		long start = System.nanoTime();
+		try {
+			changed = checkRoots();
+		} catch (RuntimeException e) {
+			LOG.error("Polling job has failed", e);
+		} finally {
+			metrics.recordPoll(System.nanoTime() - start);
+			synchronized (this) {
+				running = false;
+				if (!started || listeners.isEmpty()) {
+					//parked until listener is added or job is started again
+					rerun = false;
+				} else if (rerun) {
+					rerun = false;
+					schedule(0);
+				} else if (!isEventDriven()) {
+					schedule(pollingStrategy.nextDelay(changed));
+				} else if (System.nanoTime() - settleUntil < 0) {
+					schedule(SETTLE_INTERVAL);
 				}
+			}
+		}
+	}
 
-                File[] roots = checkOS();
+	/**
+	 * @return true if roots have been changed
+	 */
+	private boolean checkRoots() {
+		if (listeners.isEmpty()) {
+			clearRoots();
+			return false;
+		}
+
+		if (resetRequested) {
+			resetRequested = false;
+			roots.clear();
+			volumesModified = 0;
+			if (linuxMounts != null) {
+				linuxMounts.reset();
+			}
+		}
 
-                if (Objects.nonNull(roots)) {
-					Arrays.sort(roots);
+        File[] current = checkOS();
 
-					if (!Arrays.equals(roots, lastRoots)) {
-						synchronized (listeners) {
-                            detectDevice(roots);
-						}
-					}
+        //null means that nothing has been changed since last listing
+        if (Objects.isNull(current)) {
+            return false;
+        }
+        long start = System.nanoTime();
+        boolean changed = roots.update(current);
+        metrics.recordDiff(System.nanoTime() - start);
+        if (changed) {
+            fireChecked();
+        }
+        return changed;
+	}
 
-					lastRoots = roots;
+	/**
+	 * Starts or stops watching of mount directories according to watch mode
+	 */
+	private void updateWatch() {
+		synchronized (this) {
+			boolean watch = watchEnabled && started && !listeners.isEmpty();
+			if (watch && watcher == null) {
+				RootsWatcher created = RootsWatcher.create(RootsWatcher.mountParents());
+				if (created == null) {
+					LOG.debug("Nothing to watch, falling back to polling");
+				} else {
+					watcher = created;
+					Thread thread = new Thread(() -> watch(created), "usb-detector-watch");
+					thread.setDaemon(true);
+					thread.start();
 				}
-			} catch (InterruptedException e) {
-				LOG.debug("Polling job have been interrupted!");
-				break;
+			} else if (!watch && watcher != null) {
+				watcher.close();
+				watcher = null;
+			}
+
+			boolean monitor = udevEnabled && started && !listeners.isEmpty();
+			if (monitor && udev == null) {
+				udev = new UdevMonitor(udevCommand, new UdevMonitor.Listener() {
+					@Override
+					public void event(UdevMonitor.UdevEvent event) {
+						LOG.debug("udev event: " + event);
+						settleUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SETTLE_MILLIS);
+						requestCheck();
+					}
+
+					@Override
+					public void started() {
+						//polling is stopped, devices changed while monitor was down are found by this check
+						requestCheck();
+					}
+
+					@Override
+					public void stopped() {
+						requestCheck();
+					}
+				});
+				udev.start();
+			} else if (!monitor && udev != null) {
+				udev.close();
+				udev = null;
 			}
 		}
+		//polling is scheduled again if watching has been stopped, roots are forgotten if there are no listeners
+		requestCheck();
+	}
+
+	/**
+	 * @return true if checks are triggered by events, polling is not needed
+	 */
+	private boolean isEventDriven() {
+		UdevMonitor monitor = udev;
+		return watcher != null || monitor != null && monitor.isRunning();
+	}
+
+	/**
+	 * Blocks until something is changed in mount directories, no wakeups in between
+	 */
+	private void watch(RootsWatcher rootsWatcher) {
+		try {
+			while (rootsWatcher.await()) {
+				requestCheck();
+			}
+		} catch (InterruptedException e) {
+			LOG.debug("Watching has been interrupted");
+		}
+
+		synchronized (this) {
+			if (watcher == rootsWatcher) {
+				LOG.debug("Watched directories are gone, falling back to polling");
+				watcher = null;
+			}
+		}
+		rootsWatcher.close();
+		requestCheck();
 	}
 
     /**
@@ -73,15 +356,18 @@ public class PollingJob extends Thread {
      * @param roots device paths.
      */
     public void detectDevice(File[] roots) {
-        Set<File> rootsSet = new HashSet<>(Arrays.asList(roots));
-        rootsSet.removeAll(Arrays.asList(lastRoots));
-        rootsSet.forEach(path -> listeners.forEach(listener -> listener.event(new DevicePathEvent(DevicePathEventType.CONNECTED, path))));
-
-        rootsSet = new HashSet<>(Arrays.asList(roots));
-        rootsSet.retainAll(Arrays.asList(lastRoots));
-        Set<File> rootsSetDisconnected = new HashSet<>(Arrays.asList(lastRoots));
-        rootsSetDisconnected.removeAll(rootsSet);
-        rootsSetDisconnected.forEach(path -> listeners.forEach(listener -> listener.event(new DevicePathEvent(DevicePathEventType.DISCONNECTED, path))));
+        if (this.roots.update(roots)) {
+            fireChecked();
+        }
+    }
+
+    private void fire(DevicePathEventType type, File path) {
+        DevicePathEvent event = new DevicePathEvent(type, path);
+        listeners.forEach(listener -> listener.event(event));
+    }
+
+    private void fireChecked() {
+        listeners.forEach(DevicePathEventListener::checked);
     }
 
     private File[] checkOS() {
@@ -89,11 +375,29 @@ public class PollingJob extends Thread {
         if (SystemUtils.IS_OS_WINDOWS) {
             roots = File.listRoots();
         } else if (SystemUtils.IS_OS_MAC) {
-            roots = new File(VOLUMES_PATH).listFiles();
+            roots = listVolumes();
+        } else if (SystemUtils.IS_OS_LINUX) {
+            //null in case if mountinfo has not been changed
+            roots = linuxMounts.listRoots();
         }
         return roots;
     }
 
+    /**
+     * @return volumes or null if /Volumes has not been modified since last listing
+     */
+    private File[] listVolumes() {
+        long modified = volumes.lastModified();
+        long now = System.currentTimeMillis();
+        //mount or unmount in the same second as last listing may keep mtime, such listing is not trusted
+        if (modified != 0 && modified == volumesModified && volumesListed - modified > RACY_MILLIS) {
+            return null;
+        }
+        volumesModified = modified;
+        volumesListed = now;
+        return volumes.listFiles();
+    }
+
 	public boolean containsEventListener(DevicePathEventListener listener) {
 		return listeners.contains(listener);
 	}
@@ -102,19 +406,17 @@ public class PollingJob extends Thread {
 	 * @return true if listener have been added
 	 */
 	public boolean addEventListener(DevicePathEventListener listener) {
-		if (listeners.contains(listener)) {
-            return false;
-		}
-
-		synchronized (listeners) {
-			return listeners.add(listener);
+		boolean added = listeners.addIfAbsent(listener);
+		if (added) {
+			updateWatch();
 		}
+		return added;
 	}
 
     void removeEventListener(DevicePathEventListener listener) {
-		synchronized (listeners) {
-            listeners.remove(listener);
-		}
+        if (listeners.remove(listener) && listeners.isEmpty()) {
+            updateWatch();
+        }
 	}
 
     public enum DevicePathEventType {
@@ -159,13 +461,85 @@ public class PollingJob extends Thread {
 
     public interface DevicePathEventListener {
 		void event(DevicePathEvent event);
+
+		/**
+		 * Called after all events of one check, so devices found together can be handled together
+		 */
+		default void checked() {
+		}
 	}
 
 	public long getPollingInterval() {
 		return pollingInterval;
 	}
 
+	/**
+	 * Sets fixed polling interval
+	 */
 	public void setPollingInterval(long pollingInterval) {
 		this.pollingInterval = pollingInterval;
+		this.pollingStrategy = PollingStrategy.fixed(pollingInterval);
+	}
+
+	public PollingStrategy getPollingStrategy() {
+		return pollingStrategy;
+	}
+
+	/**
+	 * Sets strategy which defines delays between checks, it is applied from next check
+	 */
+	public void setPollingStrategy(PollingStrategy pollingStrategy) {
+		this.pollingStrategy = Objects.requireNonNull(pollingStrategy);
+	}
+
+	public boolean isWatchEnabled() {
+		return watchEnabled;
+	}
+
+	/**
+	 * In watch mode roots are re-listed only when mount directories (/Volumes, /media/$USER,
+	 * /run/media/$USER, /mnt) are changed. Polling is used if none of them can be watched
+	 */
+	public void setWatchEnabled(boolean watchEnabled) {
+		this.watchEnabled = watchEnabled;
+		updateWatch();
+	}
+
+	public boolean isUdevEnabled() {
+		return udevEnabled;
+	}
+
+	/**
+	 * On Linux roots are checked when udev reports block devices, "udevadm monitor" is kept running for that.
+	 * Polling is used while the monitor is not running, it is restarted if it dies. Ignored on other systems
+	 */
+	public void setUdevEnabled(boolean udevEnabled) {
+		if (udevEnabled && !SystemUtils.IS_OS_LINUX) {
+			LOG.debug("udev is available only on Linux");
+			return;
+		}
+		this.udevEnabled = udevEnabled;
+		updateWatch();
+	}
+
+	public List<String> getUdevCommand() {
+		return udevCommand;
+	}
+
+	/**
+	 * @param udevCommand program which prints events in format of "udevadm monitor --property",
+	 *        {@link UdevMonitor#DEFAULT_COMMAND} by default. Running monitor is restarted with the new command
+	 */
+	public void setUdevCommand(List<String> udevCommand) {
+		this.udevCommand = Collections.unmodifiableList(new ArrayList<>(udevCommand));
+		UdevMonitor running;
+		synchronized (this) {
+			running = udev;
+			udev = null;
+		}
+		if (running != null) {
+			running.close();
+			updateWatch();
+		}
 	}
 }
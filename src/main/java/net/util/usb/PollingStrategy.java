@@ -0,0 +1,43 @@
+package net.util.usb;
+
+/**
+ * Defines delay between checks of roots. Strategy can keep state, so one instance
+ * should be used by one detector only.
+ */
+public interface PollingStrategy {
+
+	/**
+	 * @param changed true if roots have been changed at last check
+	 * @return delay before next check in milliseconds
+	 */
+	long nextDelay(boolean changed);
+
+	/**
+	 * @return strategy which always waits the same interval
+	 */
+	static PollingStrategy fixed(long interval) {
+		return changed -> interval;
+	}
+
+	/**
+	 * Polls with min interval after a change, then each check without changes multiplies the interval up to max
+	 */
+	static PollingStrategy idleBackoff(long minInterval, long maxInterval, double multiplier) {
+		return new AdaptivePollingStrategy(minInterval, maxInterval, multiplier, 0);
+	}
+
+	/**
+	 * Polls with min interval while devices are changing (and during burst window after the last change),
+	 * so several devices inserted together are seen quickly. Then relaxes to max interval
+	 */
+	static PollingStrategy burst(long minInterval, long maxInterval, long burstWindow) {
+		return new AdaptivePollingStrategy(minInterval, maxInterval, 2, burstWindow);
+	}
+
+	/**
+	 * @return burst strategy: 100 ms during 3 seconds after a change, then up to 5 seconds
+	 */
+	static PollingStrategy burst() {
+		return burst(100, 5000, 3000);
+	}
+}
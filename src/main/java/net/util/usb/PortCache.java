@@ -0,0 +1,291 @@
+package net.util.usb;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Last known ports by volume identity, kept on disk between runs, so devices which are already inserted
+ * get their port without running system_profiler / powershell again. Only the most recently used entries are kept.
+ * <p>
+ * File is small and rewritten completely: magic, version, count, entries from least to most recently used
+ * and CRC32 of all previous bytes. It is written to a temporary file and moved over the old one,
+ * so a crash leaves either old or new file. File which can't be read is ignored.
+ * <p>
+ * Detectors of one JVM which use the same file share one instance, see {@link #acquire(Path, Executor, ScheduledExecutorService)},
+ * otherwise each of them would overwrite the file with its own entries only.
+ */
+class PortCache {
+	private static final Logger LOG = LoggerFactory.getLogger(PortCache.class);
+
+	static final int DEFAULT_CAPACITY = 256;
+
+	private static final int MAGIC = 0x55534250; // USBP
+
+	private static final int VERSION = 1;
+
+	private static final int MAX_FILE_SIZE = 1 << 20;
+
+	/**
+	 * several devices are usually resolved together, they are written at once
+	 */
+	private static final long SAVE_DELAY = 1000;
+
+	/**
+	 * shared instances by absolute path of the file
+	 */
+	private static final Map<Path, PortCache> INSTANCES = new HashMap<>();
+
+	private final Path file;
+
+	private final int capacity;
+
+	private final Executor writer;
+
+	private final ScheduledExecutorService timer;
+
+	private final LinkedHashMap<String, String> ports;
+
+	private boolean loaded;
+
+	private boolean dirty;
+
+	private boolean saveScheduled;
+
+	/**
+	 * only one thread writes the file, snapshot is taken under this lock too, so older one never replaces newer
+	 */
+	private final Object writeLock = new Object();
+
+	/**
+	 * detectors which use shared instance, guarded by {@link #INSTANCES}
+	 */
+	private int references;
+
+	/**
+	 * @param writer executor for blocking work where file is written
+	 * @param timer delays writing
+	 */
+	PortCache(Path file, int capacity, Executor writer, ScheduledExecutorService timer) {
+		this.file = file;
+		this.capacity = capacity;
+		this.writer = writer;
+		this.timer = timer;
+		this.ports = new LinkedHashMap<String, String>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+				return size() > PortCache.this.capacity;
+			}
+		};
+	}
+
+	/**
+	 * @return shared cache of the file, {@link #release()} must be called when it is not used anymore.
+	 *         Executors of the first caller are used for writing
+	 */
+	static PortCache acquire(Path file, Executor writer, ScheduledExecutorService timer) {
+		Path key = file.toAbsolutePath().normalize();
+		synchronized (INSTANCES) {
+			PortCache cache = INSTANCES.computeIfAbsent(key, k -> new PortCache(k, DEFAULT_CAPACITY, writer, timer));
+			cache.references++;
+			return cache;
+		}
+	}
+
+	/**
+	 * Writes changes, last user of shared cache removes it, so file is read again by next one
+	 */
+	void release() {
+		synchronized (INSTANCES) {
+			if (references > 0 && --references == 0) {
+				INSTANCES.remove(file, this);
+			}
+		}
+		flush();
+	}
+
+	/**
+	 * @return ~/.usb-detector/ports.cache
+	 */
+	static Path defaultFile() {
+		return Paths.get(System.getProperty("user.home"), ".usb-detector", "ports.cache");
+	}
+
+	/**
+	 * @param volumeId identity of the file system, see {@link net.util.usb.port.PortDetector#getVolumeId(java.io.File)}
+	 * @param root path where volume is mounted
+	 * @return key or null if volume can't be identified
+	 */
+	static String key(String volumeId, String root) {
+		return volumeId == null || volumeId.isEmpty() ? null : volumeId + '|' + root;
+	}
+
+	/**
+	 * Reads the file on first call, so blocking
+	 *
+	 * @return last known port or null
+	 */
+	synchronized String get(String key) {
+		load();
+		return ports.get(key);
+	}
+
+	synchronized void put(String key, String port) {
+		load();
+		if (port.equals(ports.put(key, port))) {
+			return;
+		}
+		dirty = true;
+		if (!saveScheduled) {
+			try {
+				timer.schedule(this::scheduledFlush, SAVE_DELAY, TimeUnit.MILLISECONDS);
+				saveScheduled = true;
+			} catch (RejectedExecutionException e) {
+				LOG.debug("Port cache is written on close");
+			}
+		}
+	}
+
+	private void scheduledFlush() {
+		try {
+			writer.execute(this::flush);
+		} catch (RejectedExecutionException e) {
+			synchronized (this) {
+				saveScheduled = false;
+			}
+			LOG.debug("Port cache is written on close");
+		}
+	}
+
+	/**
+	 * Writes changes now
+	 */
+	void flush() {
+		synchronized (writeLock) {
+			byte[] data;
+			synchronized (this) {
+				saveScheduled = false;
+				if (!dirty) {
+					return;
+				}
+				dirty = false;
+				data = write(new ArrayList<>(ports.entrySet()));
+			}
+			try {
+				Path dir = file.toAbsolutePath().getParent();
+				Files.createDirectories(dir);
+				Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+				try {
+					try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+						ByteBuffer buffer = ByteBuffer.wrap(data);
+						while (buffer.hasRemaining()) {
+							channel.write(buffer);
+						}
+						channel.force(false);
+					}
+					try {
+						Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+					} catch (AtomicMoveNotSupportedException e) {
+						Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+					}
+				} finally {
+					Files.deleteIfExists(tmp);
+				}
+			} catch (IOException | RuntimeException e) {
+				LOG.warn("Can't write port cache " + file, e);
+			}
+		}
+	}
+
+	private void load() {
+		if (loaded) {
+			return;
+		}
+		loaded = true;
+		try {
+			if (Files.size(file) > MAX_FILE_SIZE) {
+				LOG.warn("Port cache " + file + " is too big, ignored");
+				return;
+			}
+			read(Files.readAllBytes(file));
+		} catch (NoSuchFileException e) {
+			// first run
+		} catch (IOException e) {
+			LOG.warn("Can't read port cache " + file + ", ignored", e);
+		}
+	}
+
+	private void read(byte[] data) throws IOException {
+		if (data.length < 16) {
+			LOG.warn("Port cache " + file + " is corrupt, ignored");
+			return;
+		}
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, data.length - 4);
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+		in.skipBytes(data.length - 4);
+		if ((int) crc.getValue() != in.readInt()) {
+			LOG.warn("Port cache " + file + " is corrupt, ignored");
+			return;
+		}
+
+		in = new DataInputStream(new ByteArrayInputStream(data, 0, data.length - 4));
+		if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+			LOG.warn("Port cache " + file + " has unknown format, ignored");
+			return;
+		}
+		int count = in.readInt();
+		Map<String, String> entries = new LinkedHashMap<>();
+		for (int i = 0; i < count; i++) {
+			entries.put(in.readUTF(), in.readUTF());
+		}
+		ports.putAll(entries);
+		LOG.debug("Port cache " + file + " is loaded, " + ports.size() + " entries");
+	}
+
+	private static byte[] write(List<Map.Entry<String, String>> entries) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + entries.size() * 64);
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(entries.size());
+			for (Map.Entry<String, String> entry : entries) {
+				out.writeUTF(entry.getKey());
+				out.writeUTF(entry.getValue());
+			}
+			CRC32 crc = new CRC32();
+			crc.update(bytes.toByteArray());
+			out.writeInt((int) crc.getValue());
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
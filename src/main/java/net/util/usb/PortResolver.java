@@ -0,0 +1,452 @@
+package net.util.usb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.util.usb.metrics.DetectorMetrics;
+import net.util.usb.port.DeviceInfo;
+import net.util.usb.port.PortDetectionException;
+import net.util.usb.port.PortDetector;
+
+/**
+ * Detects ports of connected devices. Every device goes through
+ * DISCOVERED -&gt; RESOLVING -&gt; RESOLVED / FAILED / REMOVED, drive which is not on USB
+ * ends as RESOLVED without port and without retries,
+ * attempts are scheduled by timer according to {@link BackoffPolicy} and run on workers.
+ * If {@link PortCache} knows the volume, its port is reported before the first attempt,
+ * which then verifies it. Devices discovered together make their first attempt together,
+ * with one {@link PortDetector#getDeviceInfos(Collection)} call, which looks up every physical device once.
+ * With coalesce window, devices discovered within it after the first one join it: volumes of one stick
+ * are usually mounted one by one. It is off by default, so the first event is not delayed.
+ */
+class PortResolver {
+	private static final Logger LOG = LoggerFactory.getLogger(PortResolver.class);
+
+	static final long DEFAULT_COALESCE_WINDOW = 0;
+
+	private final PortDetector portDetector;
+
+	private final ExecutorService workers;
+
+	private final ScheduledExecutorService timer;
+
+	private final Callback callback;
+
+	private final DetectorMetrics metrics;
+
+	private final PortCache cache;
+
+	private volatile BackoffPolicy policy = new BackoffPolicy();
+
+	private volatile long coalesceWindow = DEFAULT_COALESCE_WINDOW;
+
+	private final Map<File, Resolution> resolutions = new ConcurrentHashMap<>();
+
+	/**
+	 * devices waiting for the end of coalesce window
+	 */
+	private final List<Resolution> waiting = new ArrayList<>();
+
+	/**
+	 * @param cache last known ports or null
+	 */
+	PortResolver(PortDetector portDetector, ExecutorService workers, ScheduledExecutorService timer, Callback callback,
+			DetectorMetrics metrics, PortCache cache) {
+		this.portDetector = portDetector;
+		this.workers = workers;
+		this.timer = timer;
+		this.callback = callback;
+		this.metrics = metrics;
+		this.cache = cache;
+	}
+
+	/**
+	 * Starts detection of the port for new device
+	 */
+	void discovered(File root) {
+		discovered(Collections.singletonList(root));
+	}
+
+	/**
+	 * Starts detection of ports for devices found by one check, first attempt is made for all of them at once
+	 */
+	void discovered(Collection<File> roots) {
+		List<Resolution> batch = new ArrayList<>(roots.size());
+		for (File root : roots) {
+			Resolution resolution = new Resolution(root);
+			Resolution previous = resolutions.put(root, resolution);
+			if (previous != null) {
+				previous.remove(false);
+			}
+			batch.add(resolution);
+		}
+		if (batch.isEmpty()) {
+			return;
+		}
+
+		long window = coalesceWindow;
+		if (window > 0) {
+			synchronized (waiting) {
+				boolean first = waiting.isEmpty();
+				waiting.addAll(batch);
+				if (!first) {
+					return;
+				}
+			}
+		}
+		try {
+			if (window > 0) {
+				timer.schedule(this::attemptWaiting, window, TimeUnit.MILLISECONDS);
+			} else {
+				timer.execute(() -> attempt(batch));
+			}
+		} catch (RejectedExecutionException e) {
+			LOG.debug("Resolver is stopped, " + roots + " are not resolved");
+			synchronized (waiting) {
+				waiting.clear();
+			}
+		}
+	}
+
+	private void attemptWaiting() {
+		List<Resolution> batch;
+		synchronized (waiting) {
+			batch = new ArrayList<>(waiting);
+			waiting.clear();
+		}
+		attempt(batch);
+	}
+
+	/**
+	 * Stops detection of the port, nothing is reported for the device after this method returns
+	 */
+	void removed(File root) {
+		Resolution resolution = resolutions.remove(root);
+		if (resolution != null) {
+			resolution.remove(false);
+		}
+	}
+
+	/**
+	 * Stops detection for all devices, running commands are killed
+	 */
+	void cancelAll() {
+		synchronized (waiting) {
+			waiting.clear();
+		}
+		for (File root : resolutions.keySet()) {
+			Resolution resolution = resolutions.remove(root);
+			if (resolution != null) {
+				resolution.remove(true);
+			}
+		}
+	}
+
+	State getState(File root) {
+		Resolution resolution = resolutions.get(root);
+		return resolution == null ? null : resolution.state;
+	}
+
+	BackoffPolicy getPolicy() {
+		return policy;
+	}
+
+	void setPolicy(BackoffPolicy policy) {
+		this.policy = policy;
+	}
+
+	long getCoalesceWindow() {
+		return coalesceWindow;
+	}
+
+	/**
+	 * @param coalesceWindow time to wait for other devices after one is discovered, 0 to start detection at once
+	 */
+	void setCoalesceWindow(long coalesceWindow) {
+		this.coalesceWindow = coalesceWindow;
+	}
+
+	private void schedule(Resolution resolution, long delay) {
+		try {
+			resolution.scheduled = timer.schedule(() -> attempt(resolution), delay, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			LOG.debug("Resolver is stopped, " + resolution.root + " is not resolved");
+		}
+	}
+
+	private void attempt(Resolution resolution) {
+		synchronized (resolution) {
+			if (prepare(resolution)) {
+				submit(resolution);
+			}
+		}
+	}
+
+	/**
+	 * Called under lock of the device
+	 */
+	private void submit(Resolution resolution) {
+		try {
+			resolution.running = workers.submit(() -> run(resolution));
+			resolution.shared = false;
+		} catch (RejectedExecutionException e) {
+			LOG.debug("Resolver is stopped, " + resolution.root + " is not resolved");
+		}
+	}
+
+	/**
+	 * Removal of one device does not interrupt detection of others, so shared attempt is killed only by {@link #cancelAll()}
+	 */
+	private void attempt(List<Resolution> batch) {
+		List<Resolution> ready = new ArrayList<>(batch.size());
+		for (Resolution resolution : batch) {
+			synchronized (resolution) {
+				if (prepare(resolution)) {
+					ready.add(resolution);
+				}
+			}
+		}
+		if (ready.isEmpty()) {
+			return;
+		}
+		if (ready.size() == 1) {
+			Resolution resolution = ready.get(0);
+			synchronized (resolution) {
+				submit(resolution);
+			}
+			return;
+		}
+
+		try {
+			Future<?> running = workers.submit(() -> run(ready));
+			for (Resolution resolution : ready) {
+				synchronized (resolution) {
+					resolution.running = running;
+					resolution.shared = true;
+				}
+			}
+		} catch (RejectedExecutionException e) {
+			LOG.debug("Resolver is stopped, " + ready.size() + " devices are not resolved");
+		}
+	}
+
+	/**
+	 * Called under lock of the device
+	 *
+	 * @return true if attempt should be made
+	 */
+	private boolean prepare(Resolution resolution) {
+		if (resolution.state == State.REMOVED || resolution.state == State.RESOLVED) {
+			return false;
+		}
+		if (!resolution.root.exists()) {
+			LOG.debug("Device has been removed during port detection: " + resolution.root);
+			resolution.state = State.REMOVED;
+			resolutions.remove(resolution.root, resolution);
+			return false;
+		}
+
+		if (resolution.attempts > 0) {
+			LOG.debug("retrying " + resolution.root + ", attempt " + (resolution.attempts + 1));
+		}
+		resolution.attempts++;
+		if (resolution.state != State.FAILED) {
+			resolution.state = State.RESOLVING;
+		}
+		return true;
+	}
+
+	private void run(Resolution resolution) {
+		if (cache != null && resolution.cacheKey == null) {
+			lookupCache(resolution);
+		}
+
+		DeviceInfo device = null;
+		try {
+			device = portDetector.getDeviceInfo(resolution.root);
+		} catch (PortDetectionException e) {
+			if (!Thread.currentThread().isInterrupted()) {
+				LOG.error("Can't read port for device: " + resolution.root, e);
+			}
+		} catch (RuntimeException e) {
+			LOG.error("Can't read port for device: " + resolution.root, e);
+		}
+		complete(resolution, device);
+		callback.attempted();
+	}
+
+	private void run(List<Resolution> batch) {
+		List<File> roots = new ArrayList<>(batch.size());
+		for (Resolution resolution : batch) {
+			if (cache != null && resolution.cacheKey == null) {
+				lookupCache(resolution);
+			}
+			if (resolution.state != State.REMOVED) {
+				roots.add(resolution.root);
+			}
+		}
+
+		Map<File, DeviceInfo> devices = Collections.emptyMap();
+		try {
+			if (!roots.isEmpty()) {
+				devices = portDetector.getDeviceInfos(roots);
+			}
+		} catch (PortDetectionException e) {
+			if (!Thread.currentThread().isInterrupted()) {
+				LOG.error("Can't read ports for devices: " + roots, e);
+			}
+		} catch (RuntimeException e) {
+			LOG.error("Can't read ports for devices: " + roots, e);
+		}
+		for (Resolution resolution : batch) {
+			complete(resolution, devices.get(resolution.root));
+		}
+		callback.attempted();
+	}
+
+	private void lookupCache(Resolution resolution) {
+		String key = PortCache.key(portDetector.getVolumeId(resolution.root), resolution.root.getAbsolutePath());
+		resolution.cacheKey = key == null ? "" : key;
+		String port = key == null ? null : cache.get(key);
+		if (port == null) {
+			return;
+		}
+		synchronized (resolution) {
+			if (resolution.state != State.REMOVED) {
+				LOG.debug("Port of " + resolution.root + " is found in cache: " + port);
+				metrics.recordCacheHit();
+				callback.cached(resolution.root, port);
+			}
+		}
+	}
+
+	private void complete(Resolution resolution, DeviceInfo device) {
+		BackoffPolicy policy = this.policy;
+		synchronized (resolution) {
+			if (resolution.state == State.REMOVED) {
+				return;
+			}
+
+			String port = device == null ? null : device.getPort();
+			if (port != null && !port.isEmpty()) {
+				boolean late = resolution.state == State.FAILED;
+				resolution.state = State.RESOLVED;
+				resolutions.remove(resolution.root, resolution);
+				if (late) {
+					LOG.debug("Port of " + resolution.root + " has been detected after failure: " + port);
+				}
+				metrics.recordResolved(System.nanoTime() - resolution.discovered);
+				if (cache != null && resolution.cacheKey != null && !resolution.cacheKey.isEmpty()) {
+					cache.put(resolution.cacheKey, port);
+				}
+				callback.resolved(resolution.root, device);
+				return;
+			}
+
+			if (device != null && device.isNotUsb()) {
+				//retries can't change the answer and would take new snapshots for nothing
+				LOG.debug("Device is not on USB: " + resolution.root);
+				resolution.state = State.RESOLVED;
+				resolutions.remove(resolution.root, resolution);
+				callback.notUsb(resolution.root);
+				return;
+			}
+
+			if (resolution.attempts < policy.getMaxAttempts()) {
+				metrics.recordRetry();
+				schedule(resolution, policy.delay(resolution.attempts));
+				return;
+			}
+
+			if (resolution.state != State.FAILED) {
+				resolution.state = State.FAILED;
+				metrics.recordFailure();
+				callback.failed(resolution.root);
+			}
+
+			if (resolution.attempts < policy.getMaxAttempts() + policy.getLateAttempts()) {
+				schedule(resolution, policy.getLateInterval());
+			} else {
+				resolutions.remove(resolution.root, resolution);
+			}
+		}
+	}
+
+	enum State {
+		DISCOVERED, RESOLVING, RESOLVED, FAILED, REMOVED
+	}
+
+	interface Callback {
+		/**
+		 * Called under lock of the device, so it is never called after {@link PortResolver#removed(File)} returns
+		 */
+		void resolved(File root, DeviceInfo device);
+
+		/**
+		 * Port is known from previous run, {@link #resolved(File, DeviceInfo)} follows with verified one
+		 */
+		void cached(File root, String port);
+
+		/**
+		 * Called after attempt for one or several devices, outside of their locks
+		 */
+		default void attempted() {
+		}
+
+		/**
+		 * Drive is not on USB, it is not retried. Called under lock of the device
+		 */
+		void notUsb(File root);
+
+		void failed(File root);
+	}
+
+	private static class Resolution {
+		private final File root;
+		private final long discovered = System.nanoTime();
+		private volatile State state = State.DISCOVERED;
+		private int attempts;
+		/**
+		 * empty if volume has no identity, null until cache is checked
+		 */
+		private volatile String cacheKey;
+		private Future<?> scheduled;
+		private Future<?> running;
+		/**
+		 * running attempt is made for several devices
+		 */
+		private boolean shared;
+
+		Resolution(File root) {
+			this.root = root;
+		}
+
+		/**
+		 * Cancels scheduled attempt and interrupts running one, which kills started processes
+		 *
+		 * @param shared true to interrupt attempt made for several devices too
+		 */
+		synchronized void remove(boolean shared) {
+			state = State.REMOVED;
+			if (scheduled != null) {
+				scheduled.cancel(false);
+			}
+			if (running != null && (shared || !this.shared)) {
+				running.cancel(true);
+			}
+		}
+	}
+}
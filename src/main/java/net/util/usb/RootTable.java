@@ -0,0 +1,101 @@
+package net.util.usb;
+
+import java.io.File;
+import java.util.Arrays;
+
+import net.util.usb.PollingJob.DevicePathEventType;
+
+/**
+ * Sorted table of known roots. New listing is compared with it in one merge pass,
+ * nothing is allocated unless table has to grow.
+ * Not thread safe, used only by the thread which checks roots.
+ */
+class RootTable {
+
+	private final DiffListener listener;
+
+	private File[] roots = new File[16];
+
+	private int size;
+
+	RootTable(DiffListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Compares listing with the table, notifies about connected and disconnected roots and stores the listing
+	 *
+	 * @param current listing, it is sorted in place if it differs from the table
+	 * @return true if roots have been changed
+	 */
+	boolean update(File[] current) {
+		//listing usually comes in the same order, so in most cases nothing is sorted
+		if (sameAs(current)) {
+			return false;
+		}
+		Arrays.sort(current);
+		if (sameAs(current)) {
+			return false;
+		}
+
+		int i = 0;
+		int j = 0;
+		while (i < size || j < current.length) {
+			int cmp;
+			if (i == size) {
+				cmp = 1;
+			} else if (j == current.length) {
+				cmp = -1;
+			} else {
+				cmp = roots[i].compareTo(current[j]);
+			}
+
+			if (cmp < 0) {
+				listener.diff(DevicePathEventType.DISCONNECTED, roots[i++]);
+			} else if (cmp > 0) {
+				listener.diff(DevicePathEventType.CONNECTED, current[j++]);
+			} else {
+				i++;
+				j++;
+			}
+		}
+
+		store(current);
+		return true;
+	}
+
+	private boolean sameAs(File[] current) {
+		if (current.length != size) {
+			return false;
+		}
+		for (int i = 0; i < size; i++) {
+			if (!roots[i].equals(current[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void store(File[] current) {
+		if (current.length > roots.length) {
+			roots = new File[Math.max(current.length, roots.length * 2)];
+		}
+		System.arraycopy(current, 0, roots, 0, current.length);
+		if (current.length < size) {
+			Arrays.fill(roots, current.length, size, null);
+		}
+		size = current.length;
+	}
+
+	/**
+	 * Forgets all roots, so every root will be reported as connected at next update
+	 */
+	void clear() {
+		Arrays.fill(roots, 0, size, null);
+		size = 0;
+	}
+
+	interface DiffListener {
+		void diff(DevicePathEventType type, File root);
+	}
+}
@@ -0,0 +1,121 @@
+package net.util.usb;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches directories where removable devices are mounted, so roots are
+ * re-listed only when something has been changed there.
+ */
+class RootsWatcher implements Closeable {
+	private static final Logger LOG = LoggerFactory.getLogger(RootsWatcher.class);
+
+	/**
+	 * time to wait for next events after first one, mount usually produces several
+	 */
+	private static final long SETTLE_MILLIS = 20;
+
+	private final WatchService watchService;
+
+	private final List<WatchKey> keys;
+
+	private RootsWatcher(WatchService watchService, List<WatchKey> keys) {
+		this.watchService = watchService;
+		this.keys = keys;
+	}
+
+	/**
+	 * @return directories where OS mounts removable devices
+	 */
+	static List<Path> mountParents() {
+		String user = System.getProperty("user.name");
+		List<Path> dirs = new ArrayList<>();
+		dirs.add(Paths.get("/Volumes"));
+		dirs.add(Paths.get("/media", user));
+		dirs.add(Paths.get("/run/media", user));
+		dirs.add(Paths.get("/mnt"));
+		return dirs;
+	}
+
+	/**
+	 * @return watcher or null if none of directories can be watched
+	 */
+	static RootsWatcher create(List<Path> dirs) {
+		WatchService watchService;
+		try {
+			watchService = FileSystems.getDefault().newWatchService();
+		} catch (IOException | UnsupportedOperationException e) {
+			LOG.debug("Watch service is not available", e);
+			return null;
+		}
+
+		List<WatchKey> keys = new ArrayList<>();
+		for (Path dir : dirs) {
+			if (!Files.isDirectory(dir)) {
+				continue;
+			}
+			try {
+				keys.add(dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+						StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY));
+				LOG.debug("Watching " + dir);
+			} catch (IOException e) {
+				LOG.debug("Can't watch " + dir, e);
+			}
+		}
+
+		if (keys.isEmpty()) {
+			try {
+				watchService.close();
+			} catch (IOException e) {
+				LOG.debug("Can't close watch service", e);
+			}
+			return null;
+		}
+
+		return new RootsWatcher(watchService, keys);
+	}
+
+	/**
+	 * Blocks until something is changed in watched directories
+	 *
+	 * @return false if watching is not possible anymore (all directories were removed or watcher closed)
+	 */
+	boolean await() throws InterruptedException {
+		try {
+			WatchKey key = watchService.take();
+			do {
+				key.pollEvents();
+				if (!key.reset()) {
+					keys.remove(key);
+				}
+			} while ((key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null);
+
+			return !keys.isEmpty();
+		} catch (ClosedWatchServiceException e) {
+			return false;
+		}
+	}
+
+	@Override
+	public void close() {
+		try {
+			watchService.close();
+		} catch (IOException e) {
+			LOG.debug("Can't close watch service", e);
+		}
+	}
+}
@@ -0,0 +1,16 @@
+package net.util.usb;
+
+import java.util.List;
+
+/**
+ * Receives events in batches: events of one check of roots, ports detected together, ...
+ * Volumes of one physical device (same port) come as one event, see {@link USBEventType#getVolumes()}
+ */
+@FunctionalInterface
+public interface USBBatchEventListener {
+
+	/**
+	 * @param events events in order they have happened, never empty
+	 */
+	void usbEvents(List<USBEventType> events);
+}
@@ -2,21 +2,54 @@ package net.util.usb;
 
 import java.io.File;
 
+import net.util.usb.port.DeviceInfo;
+
 public class USBDevice {
 
 	private final File rootDirectory;
 
 	private String port;
 
+	private final String vendorId;
+
+	private final String productId;
+
+	private final String serialNumber;
+
+	private final long capacity;
+
+	private final String volumeId;
+
 	public USBDevice(File rootDirectory, String port) {
+		this(rootDirectory, port, null, null, null, -1, null);
+	}
+
+	/**
+	 * @param info port and details found by port detector
+	 */
+	public USBDevice(File rootDirectory, DeviceInfo info) {
+		this(rootDirectory, info.getPort(), info.getVendorId(), info.getProductId(), info.getSerialNumber(),
+				info.getCapacity(), info.getVolumeId());
+	}
+
+	public USBDevice(File rootDirectory, String port, String vendorId, String productId, String serialNumber,
+			long capacity, String volumeId) {
 		this.rootDirectory = rootDirectory;
 		this.port = port;
+		this.vendorId = vendorId;
+		this.productId = productId;
+		this.serialNumber = serialNumber;
+		this.capacity = capacity;
+		this.volumeId = volumeId;
 	}
 
 	public File getRootDirectory() {
 		return rootDirectory;
 	}
 	
+	/**
+	 * @return port or null if it is not detected yet
+	 */
 	public String getPort() {
 		return port;
 	}
@@ -25,8 +58,42 @@ public class USBDevice {
 		this.port = port;
 	}
 
+	/**
+	 * @return USB vendor id, 4 hex digits in lower case, or null if unknown
+	 */
+	public String getVendorId() {
+		return vendorId;
+	}
+
+	/**
+	 * @return USB product id, 4 hex digits in lower case, or null if unknown
+	 */
+	public String getProductId() {
+		return productId;
+	}
+
+	public String getSerialNumber() {
+		return serialNumber;
+	}
+
+	/**
+	 * @return size of the media in bytes or -1 if unknown
+	 */
+	public long getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return identity of the file system (UUID or volume serial number), null if unknown
+	 */
+	public String getVolumeId() {
+		return volumeId;
+	}
+
 	@Override
 	public String toString() {
-		return "USBDevice [rootDirectory=" + rootDirectory + ", port=" + port + "]";
+		return "USBDevice [rootDirectory=" + rootDirectory + ", port=" + port + ", vendorId=" + vendorId
+				+ ", productId=" + productId + ", serialNumber=" + serialNumber + ", capacity=" + capacity
+				+ ", volumeId=" + volumeId + "]";
 	}
 }
@@ -1,17 +1,34 @@
 package net.util.usb;
 
 import java.io.File;
+import java.util.Collections;
+import java.util.List;
 
 public class USBEventType {
 
 	private final File rootDirectory;
 	private DeviceEventType type;
 	private String port;
+	private final USBDevice device;
+	private final List<USBDevice> volumes;
 
 	public USBEventType(DeviceEventType type, File rootDirectory, String port) {
-		this.rootDirectory = rootDirectory;
+		this(type, new USBDevice(rootDirectory, port));
+	}
+
+	public USBEventType(DeviceEventType type, USBDevice device) {
+		this(type, Collections.singletonList(device));
+	}
+
+	/**
+	 * Event of physical device with several volumes on the same port, root and device are of the first volume
+	 */
+	public USBEventType(DeviceEventType type, List<USBDevice> volumes) {
+		this.device = volumes.get(0);
+		this.rootDirectory = device.getRootDirectory();
 		this.type = type;
-		this.port = port;
+		this.port = device.getPort();
+		this.volumes = Collections.unmodifiableList(volumes);
 	}
 
 	public DeviceEventType getType() {
@@ -34,6 +51,20 @@ public class USBEventType {
 		return rootDirectory;
 	}
 
+	/**
+	 * @return device with details, they are known for CONNECTED events
+	 */
+	public USBDevice getDevice() {
+		return device;
+	}
+
+	/**
+	 * @return all volumes of the device, several only for events delivered to {@link USBBatchEventListener}
+	 */
+	public List<USBDevice> getVolumes() {
+		return volumes;
+	}
+
 	@Override
 	public String toString() {
 		return "USBEventType [type=" + type + ", port=" + port + ", device=" + super.toString() + "]";
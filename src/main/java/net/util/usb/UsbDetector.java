@@ -1,101 +1,303 @@
 package net.util.usb;
 
 import java.io.File;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import net.util.usb.PollingJob.DevicePathEvent;
 import net.util.usb.PollingJob.DevicePathEventListener;
 import net.util.usb.PollingJob.DevicePathEventType;
 import net.util.usb.USBEventType.DeviceEventType;
-import net.util.usb.port.PortDetectionException;
+import net.util.usb.metrics.DetectorMetrics;
+import net.util.usb.port.DeviceInfo;
 import net.util.usb.port.PortDetector;
+import net.util.usb.port.utils.ExecCommand;
 
 /**
  * Detects inserting of removable devices with their port.
  *  
  * @author Dmytro Karimov
  */
-public class UsbDetector {
+public class UsbDetector implements AutoCloseable {
     private static final Logger LOG = LoggerFactory.getLogger(UsbDetector.class);
 
-    private final static int MAX_RETRIES = 5;
+    private long pollingInterval;
 
-    private long pollingInterval = 200;
+    /**
+     * listeners are called here, each one from its own queue
+     */
+    private final ExecutorService dispatcher;
 
-    private final List<Consumer<DetectorState>> detectorStateListeners = new ArrayList<>();
-    
-    private final List<USBEventListener> listeners = new ArrayList<>();
+    private final ListenerRegistry<Consumer<DetectorState>, DetectorState> detectorStateListeners;
+
+    private final ListenerRegistry<USBEventListener, USBEventType> listeners;
+
+    private final ListenerRegistry<USBBatchEventListener, List<USBEventType>> batchListeners;
+
+    /**
+     * events for batch listeners, delivered after each check and each port detection attempt
+     */
+    private final List<USBEventType> batch = new ArrayList<>();
+
+    private final UsbEventPublisher publisher;
 
-    private final PollingJob deviceDetector = new PollingJob();
+    private final PollingJob deviceDetector;
 
-    private final PortDetector portDetector = PortDetector.getInstance();
+    private final PortDetector portDetector;
+
+    private final Predicate<File> rootFilter;
 
     private final DevicePathEventListener usbDriveListener;
 
-    private static UsbDetector instance;
+    private final PortResolver portResolver;
 
-    private UsbDetector() {
-        usbDriveListener = (ev) -> {
-        	fireDetectorState(DetectorState.NEW_DEVICE_FOUND);
+    private final DetectorMetrics metrics = new DetectorMetrics();
 
-            synchronized (listeners) {
-                LOG.debug("Device event: " + ev);
+    private final DeviceRegistry devices = new DeviceRegistry();
 
+    private final PortCache portCache;
 
-                if (ev.getType() == DevicePathEventType.CONNECTED) {
-                    listeners.forEach(l -> l.usbEvent(new USBEventType(DeviceEventType.NEW_DEVICE, ev.getPath(), null)));
+    private volatile boolean closed;
+
+    private static final AtomicInteger counter = new AtomicInteger();
+
+    private static volatile UsbDetector instance;
+
+    private UsbDetector(Builder builder) {
+        pollingInterval = builder.pollingInterval;
+        dispatcher = builder.dispatcher;
+        portDetector = builder.portDetector != null ? builder.portDetector : PortDetector.getInstance();
+        rootFilter = builder.rootFilter;
+
+        detectorStateListeners = new ListenerRegistry<>(dispatcher, Consumer::accept, state -> state, metrics);
+        listeners = new ListenerRegistry<>(dispatcher, USBEventListener::usbEvent, USBEventType::getRootDirectory, metrics);
+        batchListeners = new ListenerRegistry<>(dispatcher, USBBatchEventListener::usbEvents, events -> events, metrics);
+        publisher = new UsbEventPublisher(dispatcher, UsbEventPublisher.DEFAULT_BUFFER);
+
+        /*
+         * ports are detected on executor for blocking work, so polling is never blocked by slow detection.
+         * Retries are scheduled on the same scheduler as polling
+         */
+        ExecutorService blockingExecutor = builder.blockingExecutor();
+        if (builder.virtualThreads && blockingExecutor == DetectorExecutors.virtualThreads()) {
+            //commands are read and hedged on virtual threads too, otherwise slow commands would still fill bounded pools
+            ExecCommand.useExecutor(blockingExecutor);
+        }
+        portCache = builder.portCache != null
+                ? PortCache.acquire(builder.portCache, blockingExecutor, builder.scheduler)
+                : null;
+        portResolver = new PortResolver(portDetector, blockingExecutor, builder.scheduler, new PortResolver.Callback() {
+            @Override
+            public void resolved(File root, DeviceInfo info) {
+                LOG.debug("port " + info.getPort());
+                USBDevice previous = devices.findByRoot(root);
+                USBDevice device = new USBDevice(root, info);
+                devices.put(device);
+                if (previous != null && info.getPort().equals(previous.getPort())) {
+                    // cached port is confirmed, only details are added
+                    return;
+                }
+                if (previous != null && previous.getPort() != null) {
+                    LOG.debug("cached port " + previous.getPort() + " of " + root + " is stale");
+                    metrics.recordStaleCacheHit();
+                }
+                fire(new USBEventType(DeviceEventType.CONNECTED, device));
+                fireDetectorState(DetectorState.NEW_DEVICE_RECOGNIZED);
+            }
+
+            @Override
+            public void cached(File root, String port) {
+                USBDevice device = new USBDevice(root, port);
+                devices.put(device);
+                fire(new USBEventType(DeviceEventType.CONNECTED, device));
+                fireDetectorState(DetectorState.NEW_DEVICE_RECOGNIZED);
+            }
+
+            @Override
+            public void attempted() {
+                flushBatch();
+            }
+
+            @Override
+            public void notUsb(File root) {
+                LOG.debug(root + " is not on USB");
+                USBDevice previous = devices.findByRoot(root);
+                if (previous != null && previous.getPort() != null) {
+                    // port from cache belongs to another drive
+                    metrics.recordStaleCacheHit();
+                    devices.put(new USBDevice(root, (String) null));
+                }
+                fireDetectorState(DetectorState.NEW_DEVICE_RECOGNIZED);
+            }
 
-                    String port = getPort(ev.getPath());
-                    LOG.debug("port " + port);
-                    if (port != null && !port.isEmpty()) {
-                        listeners.forEach(l -> l.usbEvent(new USBEventType(DeviceEventType.CONNECTED, ev.getPath(), port)));
+            @Override
+            public void failed(File root) {
+                LOG.debug("port of " + root + " has not been detected");
+                fireDetectorState(DetectorState.NEW_DEVICE_RECOGNIZED);
+            }
+        }, metrics, portCache);
+        if (builder.backoffPolicy != null) {
+            portResolver.setPolicy(builder.backoffPolicy);
+        }
+        portResolver.setCoalesceWindow(builder.coalesceWindow);
+
+        usbDriveListener = new DevicePathEventListener() {
+            /**
+             * devices connected during one check, their ports are detected together
+             */
+            private final List<File> discovered = new ArrayList<>();
+
+            @Override
+            public void event(DevicePathEvent ev) {
+                File root = ev.getPath();
+                if (!rootFilter.test(root)) {
+                    return;
+                }
+
+                fireDetectorState(DetectorState.NEW_DEVICE_FOUND);
+                LOG.debug("Device event: " + ev);
+
+                if (ev.getType() == DevicePathEventType.CONNECTED) {
+                    USBDevice device = new USBDevice(root, (String) null);
+                    devices.put(device);
+                    fire(new USBEventType(DeviceEventType.NEW_DEVICE, device));
+                    synchronized (discovered) {
+                        discovered.add(root);
                     }
                 } else {
-                    listeners.forEach(l -> l.usbEvent(new USBEventType(DeviceEventType.REMOVED, ev.getPath(), null)));
+                    synchronized (discovered) {
+                        discovered.remove(root);
+                    }
+                    portResolver.removed(root);
+                    USBDevice device = devices.findByRoot(root);
+                    devices.remove(root);
+                    fire(new USBEventType(DeviceEventType.REMOVED, device != null ? device : new USBDevice(root, (String) null)));
+                    fireDetectorState(DetectorState.NEW_DEVICE_RECOGNIZED);
                 }
             }
 
-            fireDetectorState(DetectorState.NEW_DEVICE_RECOGNIZED);
+            @Override
+            public void checked() {
+                flushBatch();
+                List<File> roots;
+                synchronized (discovered) {
+                    if (discovered.isEmpty()) {
+                        return;
+                    }
+                    roots = new ArrayList<>(discovered);
+                    discovered.clear();
+                }
+                portResolver.discovered(roots);
+            }
         };
 
+        deviceDetector = new PollingJob(builder.scheduler, metrics);
         deviceDetector.setPollingInterval(pollingInterval);
-        deviceDetector.start();
+        if (builder.pollingStrategy != null) {
+            deviceDetector.setPollingStrategy(builder.pollingStrategy);
+        }
+        deviceDetector.setWatchEnabled(builder.watchEnabled);
+        if (builder.udevCommand != null) {
+            deviceDetector.setUdevCommand(builder.udevCommand);
+        }
+        deviceDetector.setUdevEnabled(builder.udevEnabled);
+
+        if (builder.jmx) {
+            metrics.register(builder.name != null ? builder.name : "detector-" + counter.incrementAndGet());
+        }
     }
-    
-    private void fireDetectorState(DetectorState state) {
-    	detectorStateListeners.forEach(l -> l.accept(state));
+
+    /**
+     * @return builder of independent detector. Detectors share threads of {@link DetectorExecutors}
+     *         unless other executors are set
+     */
+    public static Builder builder() {
+        return new Builder();
     }
 
-    public static UsbDetector getInstance() {
-        if (instance == null) {
-            synchronized (UsbDetector.class) {
-                if (instance == null) {
-                    instance = new UsbDetector();
-                }
+    private void fire(USBEventType event) {
+        listeners.fire(event);
+        publisher.publish(event);
+        if (!batchListeners.isEmpty()) {
+            synchronized (batch) {
+                batch.add(event);
             }
         }
-        return instance;
     }
 
-    private String getPort(File deviceRootDir) {
-        int retryCount = 0;
-        while (retryCount++ <= MAX_RETRIES) {
-            if (retryCount > 1) {
-                LOG.debug("retrying...");
+    /**
+     * Delivers collected events to batch listeners. CONNECTED and REMOVED events with the same port
+     * are volumes of one device, they are delivered as one event
+     */
+    private void flushBatch() {
+        List<USBEventType> events;
+        synchronized (batch) {
+            if (batch.isEmpty()) {
+                return;
+            }
+            events = new ArrayList<>(batch);
+            batch.clear();
+        }
+
+        /*
+         * volumes are merged into the last event of their port while its type is the same,
+         * so order of connections and removals of one port is kept
+         */
+        List<DeviceEventType> types = new ArrayList<>(events.size());
+        List<List<USBDevice>> volumes = new ArrayList<>(events.size());
+        Map<String, Integer> lastByPort = new HashMap<>();
+        for (USBEventType event : events) {
+            String port = event.getPort();
+            boolean grouped = event.getType() != DeviceEventType.NEW_DEVICE && port != null && !port.isEmpty();
+            Integer last = grouped ? lastByPort.get(port) : null;
+            if (last != null && types.get(last) == event.getType()) {
+                volumes.get(last).addAll(event.getVolumes());
+                continue;
             }
-            try {
-                return portDetector.getDeviceUSBPortLocation(deviceRootDir);
-            } catch (PortDetectionException e) {
-                LOG.error("Can't read port for device: " + deviceRootDir, e);
+            if (grouped) {
+                lastByPort.put(port, types.size());
             }
+            types.add(event.getType());
+            volumes.add(new ArrayList<>(event.getVolumes()));
+        }
+
+        List<USBEventType> grouped = new ArrayList<>(types.size());
+        for (int i = 0; i < types.size(); i++) {
+            grouped.add(new USBEventType(types.get(i), volumes.get(i)));
         }
+        batchListeners.fire(Collections.unmodifiableList(grouped));
+    }
+
+    private void fireDetectorState(DetectorState state) {
+    	detectorStateListeners.fire(state);
+    }
 
-        return null;
+    /**
+     * @return default detector, the same as {@code builder().build()} created once (and again after it is closed)
+     */
+    public static UsbDetector getInstance() {
+        if (instance == null || instance.closed) {
+            synchronized (UsbDetector.class) {
+                if (instance == null || instance.closed) {
+                    instance = builder().build();
+                }
+            }
+        }
+        return instance;
     }
 
     /**
@@ -115,7 +317,7 @@ public class UsbDetector {
             return false;
         }
 
-        if (listeners.isEmpty()) {
+        if (listeners.isEmpty() && batchListeners.isEmpty()) {
             return false;
         }
 
@@ -130,20 +332,11 @@ public class UsbDetector {
      * Can be used to show useful information about process of recognizition of new devices
      */
     public boolean addDetectorStateEventListener(Consumer<DetectorState> listener) {
-        if (detectorStateListeners.contains(listener)) {
-            return false;
-        }
-
-        synchronized (detectorStateListeners) {
-        	detectorStateListeners.add(listener);
-            return true;
-        }
+        return detectorStateListeners.add(listener, OverflowPolicy.COALESCE, ListenerRegistry.DEFAULT_CAPACITY);
     }
 
     public boolean removeDetectorStateEventListener(Consumer<DetectorState> listener) {
-        synchronized (detectorStateListeners) {
-            return detectorStateListeners.remove(listener);
-        }
+        return detectorStateListeners.remove(listener);
     }
 
     /**
@@ -154,46 +347,178 @@ public class UsbDetector {
     }
     
     /**
-     * Adds listner that react on new devices
+     * Adds listner that react on new devices. When listener does not keep up, queued event of the same device
+     * is replaced with new one ({@link OverflowPolicy#COALESCE}), detection never waits for it
      * @return false in case if listener already added
      */
     public boolean addEventListener(USBEventListener listener) {
-        if (listeners.contains(listener)) {
-            return false;
-        }
+        return addEventListener(listener, OverflowPolicy.COALESCE, ListenerRegistry.DEFAULT_CAPACITY);
+    }
 
-        synchronized (listeners) {
-            listeners.add(listener);
-            return true;
-        }
+    /**
+     * Adds listner that react on new devices. Listener is called from its own queue,
+     * so it does not delay detection and other listeners unless its queue is full and policy is
+     * {@link OverflowPolicy#BLOCK}
+     *
+     * @param policy what to do when listener does not keep up and its queue is full
+     * @param capacity max count of events waiting for the listener
+     * @return false in case if listener already added
+     */
+    public boolean addEventListener(USBEventListener listener, OverflowPolicy policy, int capacity) {
+        return listeners.add(listener, policy, capacity);
     }
 
     public boolean removeEventListener(USBEventListener listener) {
-        synchronized (listeners) {
-            return listeners.remove(listener);
-        }
+        return listeners.remove(listener);
+    }
+
+    /**
+     * Adds listener which receives events in batches, volumes of one device come as one event.
+     * It does not start detection, {@link #start()} does. When listener does not keep up,
+     * the oldest batch is dropped ({@link OverflowPolicy#DROP_OLDEST}), detection never waits for it
+     *
+     * @return false in case if listener already added
+     */
+    public boolean addBatchEventListener(USBBatchEventListener listener) {
+        return addBatchEventListener(listener, OverflowPolicy.DROP_OLDEST, ListenerRegistry.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param policy what to do when listener does not keep up and its queue is full
+     * @param capacity max count of batches waiting for the listener
+     * @return false in case if listener already added
+     * @see #addBatchEventListener(USBBatchEventListener)
+     */
+    public boolean addBatchEventListener(USBBatchEventListener listener, OverflowPolicy policy, int capacity) {
+        return batchListeners.add(listener, policy, capacity);
+    }
+
+    public boolean removeBatchEventListener(USBBatchEventListener listener) {
+        return batchListeners.remove(listener);
+    }
+
+    /**
+     * Events as reactive stream. Every subscriber first receives state of currently connected devices
+     * (NEW_DEVICE or CONNECTED with port), then live events, so {@link #forceEvents()} is not needed.
+     * Events are delivered only when requested by the subscriber
+     */
+    public Flow.Publisher<USBEventType> getPublisher() {
+        return publisher;
+    }
+
+    /**
+     * @return currently connected devices in order of connection, port is null while it is being detected
+     */
+    public List<USBDevice> getConnectedDevices() {
+        return devices.getDevices();
+    }
+
+    /**
+     * @return connected device mounted to the root or null
+     */
+    public USBDevice findByRoot(File root) {
+        return devices.findByRoot(root);
+    }
+
+    /**
+     * @return devices plugged into the port, several if device has several volumes
+     */
+    public List<USBDevice> findByPort(String port) {
+        return devices.findByPort(port);
+    }
+
+    /**
+     * @return connected devices with file system UUID (volume serial number on Windows)
+     */
+    public List<USBDevice> findByVolumeId(String volumeId) {
+        return devices.findByVolumeId(volumeId);
+    }
+
+    /**
+     * @return queue depth, lag and counters of each listener
+     */
+    public Map<USBEventListener, ListenerStats> getListenerStats() {
+        return listeners.getStats();
     }
 
     public boolean isStarted() {
         return deviceDetector.containsEventListener(usbDriveListener);
     }
 
+    /**
+     * Starts detection, current devices are reported as connected
+     *
+     * @throws IllegalStateException if detector is closed
+     */
     public void start() {
+        if (closed) {
+            throw new IllegalStateException("Detector is closed");
+        }
         if (!isStarted()) {
             LOG.debug("Starting drive detector");
             deviceDetector.addEventListener(usbDriveListener);
+            deviceDetector.start();
 
             forceEvents();
         }
     }
 
+    /**
+     * Stops detection, detector does not wake up until it is started again.
+     * Running port detections are cancelled
+     */
     public void stop() {
         LOG.debug("Stopping drive detector");
         deviceDetector.removeEventListener(usbDriveListener);
+        deviceDetector.stop();
+        portResolver.cancelAll();
+        devices.clear();
+        publisher.reset();
+        synchronized (batch) {
+            batch.clear();
+        }
+    }
+
+    /**
+     * Stops detection forever: watches are closed, running commands are killed and subscribers are completed.
+     * Shared threads are released when they are not used by other detectors
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        stop();
+        deviceDetector.close();
+        publisher.close();
+        if (portCache != null) {
+            portCache.release();
+        }
+        metrics.unregister();
+    }
+
+    /**
+     * @return poll, port detection, command and listener timings. Also available over JMX
+     *         as net.util.usb:type=UsbDetector
+     */
+    public DetectorMetrics getMetrics() {
+        return metrics;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * for benchmarks, roots can be passed to {@link PollingJob#detectDevice(File[])} directly
+     */
+    PollingJob getDeviceDetector() {
+        return deviceDetector;
     }
 
     public List<USBEventListener> getListeners() {
-        return Collections.unmodifiableList(listeners);
+        return Collections.unmodifiableList(listeners.getListeners());
     }
 
 
@@ -215,6 +540,239 @@ public class UsbDetector {
         this.pollingInterval = pollingInterval;
     }
     
+    public PollingStrategy getPollingStrategy() {
+        return deviceDetector.getPollingStrategy();
+    }
+
+    /**
+     * Sets strategy of delays between checks, e.g. poll fast after changes and rarely when nothing happens.
+     * {@link #setPollingInterval(long)} replaces it with fixed interval
+     */
+    public void setPollingStrategy(PollingStrategy pollingStrategy) {
+        deviceDetector.setPollingStrategy(pollingStrategy);
+    }
+
+    public boolean isWatchEnabled() {
+        return deviceDetector.isWatchEnabled();
+    }
+
+    /**
+     * Enables detection of devices by file system events instead of polling.
+     * Polling interval is used as fallback in case if mount directories can't be watched
+     */
+    public void setWatchEnabled(boolean watchEnabled) {
+        deviceDetector.setWatchEnabled(watchEnabled);
+    }
+
+    public boolean isUdevEnabled() {
+        return deviceDetector.isUdevEnabled();
+    }
+
+    /**
+     * Linux only: detects devices by events of "udevadm monitor" instead of polling.
+     * Polling interval is used as fallback while udevadm is not running
+     */
+    public void setUdevEnabled(boolean udevEnabled) {
+        deviceDetector.setUdevEnabled(udevEnabled);
+    }
+
+    public long getCoalesceWindow() {
+        return portResolver.getCoalesceWindow();
+    }
+
+    /**
+     * Sets time to wait for other volumes after one is found, so ports of all volumes of a device
+     * are detected at once. 0 (default) starts detection without waiting, every detection is delayed by the window otherwise
+     */
+    public void setCoalesceWindow(long coalesceWindow) {
+        portResolver.setCoalesceWindow(coalesceWindow);
+    }
+
+    public BackoffPolicy getBackoffPolicy() {
+        return portResolver.getPolicy();
+    }
+
+    /**
+     * Sets delays between attempts of port detection
+     */
+    public void setBackoffPolicy(BackoffPolicy backoffPolicy) {
+        portResolver.setPolicy(backoffPolicy);
+    }
+
+    public static class Builder {
+        private long pollingInterval = 200;
+        private PollingStrategy pollingStrategy;
+        private boolean watchEnabled;
+        private boolean udevEnabled;
+        private List<String> udevCommand;
+        private String name;
+        private boolean jmx = true;
+        private BackoffPolicy backoffPolicy;
+        private long coalesceWindow = PortResolver.DEFAULT_COALESCE_WINDOW;
+        private Predicate<File> rootFilter = root -> true;
+        private ScheduledExecutorService scheduler = DetectorExecutors.scheduler();
+        private ExecutorService executor;
+        private boolean virtualThreads;
+        private ExecutorService dispatcher = DetectorExecutors.dispatcher();
+        private PortDetector portDetector;
+        private Path portCache;
+
+        private Builder() {
+        }
+
+        public Builder pollingInterval(long pollingInterval) {
+            this.pollingInterval = pollingInterval;
+            this.pollingStrategy = null;
+            return this;
+        }
+
+        /**
+         * Adaptive delays between checks instead of fixed polling interval, e.g. {@link PollingStrategy#burst()}
+         */
+        public Builder pollingStrategy(PollingStrategy pollingStrategy) {
+            this.pollingStrategy = pollingStrategy;
+            return this;
+        }
+
+        /**
+         * @param name name of detector in JMX, detector-N by default
+         */
+        public Builder name(String name) {
+            this.name = name;
+            return this;
+        }
+
+        /**
+         * @param jmx false to not register metrics in platform MBean server
+         */
+        public Builder jmx(boolean jmx) {
+            this.jmx = jmx;
+            return this;
+        }
+
+        public Builder watchEnabled(boolean watchEnabled) {
+            this.watchEnabled = watchEnabled;
+            return this;
+        }
+
+        /**
+         * Linux only, see {@link UsbDetector#setUdevEnabled(boolean)}
+         */
+        public Builder udevEnabled(boolean udevEnabled) {
+            this.udevEnabled = udevEnabled;
+            return this;
+        }
+
+        /**
+         * @param udevCommand program which prints udev events, see {@link PollingJob#setUdevCommand(List)}
+         */
+        public Builder udevCommand(List<String> udevCommand) {
+            this.udevCommand = Objects.requireNonNull(udevCommand);
+            return this;
+        }
+
+        /**
+         * @param coalesceWindow see {@link UsbDetector#setCoalesceWindow(long)}, 0 by default
+         */
+        public Builder coalesceWindow(long coalesceWindow) {
+            this.coalesceWindow = coalesceWindow;
+            return this;
+        }
+
+        public Builder backoffPolicy(BackoffPolicy backoffPolicy) {
+            this.backoffPolicy = backoffPolicy;
+            return this;
+        }
+
+        /**
+         * Only roots accepted by the filter are reported, e.g. to watch only some drive letters
+         */
+        public Builder rootFilter(Predicate<File> rootFilter) {
+            this.rootFilter = Objects.requireNonNull(rootFilter);
+            return this;
+        }
+
+        /**
+         * Scheduler for polling and retries, tasks on it never block
+         */
+        public Builder scheduler(ScheduledExecutorService scheduler) {
+            this.scheduler = Objects.requireNonNull(scheduler);
+            return this;
+        }
+
+        /**
+         * Executor for blocking work: port detection runs commands and waits for their output
+         */
+        public Builder executor(ExecutorService executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Runs blocking work on virtual threads if JVM supports them (Java 21+),
+         * otherwise executor for blocking work is used. Output of commands is read and hedged attempts are run
+         * on virtual threads too, see {@link ExecCommand#useExecutor(ExecutorService)}: this applies to the whole JVM
+         */
+        public Builder virtualThreads(boolean virtualThreads) {
+            this.virtualThreads = virtualThreads;
+            return this;
+        }
+
+        /**
+         * Executor where listeners and subscribers are called
+         */
+        public Builder dispatcher(ExecutorService dispatcher) {
+            this.dispatcher = Objects.requireNonNull(dispatcher);
+            return this;
+        }
+
+        /**
+         * @param portDetector detector of ports, {@link PortDetector#getInstance()} for current OS by default
+         */
+        public Builder portDetector(PortDetector portDetector) {
+            this.portDetector = portDetector;
+            return this;
+        }
+
+        /**
+         * Ports of devices are kept in the file between runs, so devices which are already inserted
+         * are reported with the port without waiting for system commands. Cached port is verified right after
+         * that and CONNECTED is fired again if it has changed. Detectors with the same file share the cache.
+         *
+         * @param portCache file of the cache, null to disable (default)
+         */
+        public Builder portCache(Path portCache) {
+            this.portCache = portCache;
+            return this;
+        }
+
+        /**
+         * @param enabled true to keep ports in ~/.usb-detector/ports.cache, see {@link #portCache(Path)}
+         */
+        public Builder portCache(boolean enabled) {
+            this.portCache = enabled ? PortCache.defaultFile() : null;
+            return this;
+        }
+
+        private ExecutorService blockingExecutor() {
+            if (executor != null) {
+                return executor;
+            }
+            if (virtualThreads) {
+                ExecutorService virtual = DetectorExecutors.virtualThreads();
+                if (virtual != null) {
+                    return virtual;
+                }
+                LOG.debug("Virtual threads are not supported, using platform threads");
+            }
+            return DetectorExecutors.resolver();
+        }
+
+        public UsbDetector build() {
+            return new UsbDetector(this);
+        }
+    }
+
     public static enum DetectorState {
     	/**
     	 * new device inserted but do not recognized as removable yet
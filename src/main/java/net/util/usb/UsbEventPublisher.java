@@ -0,0 +1,246 @@
+package net.util.usb;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.util.usb.USBEventType.DeviceEventType;
+
+/**
+ * Publishes device events with backpressure. New subscriber first receives current state of
+ * every connected device (NEW_DEVICE or CONNECTED), then live events, so nothing has to be
+ * enumerated or resolved again for late subscribers.
+ * <p>
+ * Events wait in subscriber's buffer until requested. When buffer is full the queued event of
+ * the same device is replaced, or the oldest one is dropped.
+ */
+class UsbEventPublisher implements Flow.Publisher<USBEventType> {
+	private static final Logger LOG = LoggerFactory.getLogger(UsbEventPublisher.class);
+
+	public static final int DEFAULT_BUFFER = 256;
+
+	private final Executor executor;
+
+	private final int bufferSize;
+
+	/**
+	 * last event of each connected device, in order of connection
+	 */
+	private final Map<File, USBEventType> connected = new LinkedHashMap<>();
+
+	private final CopyOnWriteArrayList<EventSubscription> subscriptions = new CopyOnWriteArrayList<>();
+
+	private boolean closed;
+
+	UsbEventPublisher(Executor executor, int bufferSize) {
+		this.executor = executor;
+		this.bufferSize = bufferSize;
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super USBEventType> subscriber) {
+		EventSubscription subscription = new EventSubscription(subscriber);
+		synchronized (this) {
+			if (closed) {
+				//subscriber of closed publisher gets onSubscribe and onComplete, nothing else
+				subscription.complete();
+				return;
+			}
+			//replay and live events are added under the same lock, so nothing is lost or duplicated
+			connected.values().forEach(subscription::offer);
+			subscriptions.add(subscription);
+		}
+		subscription.schedule();
+	}
+
+	void publish(USBEventType event) {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			if (event.getType() == DeviceEventType.REMOVED) {
+				connected.remove(event.getRootDirectory());
+			} else {
+				connected.put(event.getRootDirectory(), event);
+			}
+			subscriptions.forEach(s -> s.offer(event));
+		}
+		subscriptions.forEach(EventSubscription::schedule);
+	}
+
+	/**
+	 * Forgets connected devices, so they are not replayed to new subscribers.
+	 * Called when detection stops: devices removed meanwhile never get REMOVED event
+	 */
+	synchronized void reset() {
+		connected.clear();
+	}
+
+	int getSubscriberCount() {
+		return subscriptions.size();
+	}
+
+	/**
+	 * Completes all subscriptions, later subscribers are completed right after onSubscribe
+	 */
+	void close() {
+		synchronized (this) {
+			closed = true;
+		}
+		for (EventSubscription subscription : subscriptions) {
+			subscription.complete();
+		}
+	}
+
+	private class EventSubscription implements Flow.Subscription, Runnable {
+		private final Flow.Subscriber<? super USBEventType> subscriber;
+
+		private final ArrayDeque<USBEventType> buffer = new ArrayDeque<>();
+
+		private final AtomicInteger wip = new AtomicInteger();
+
+		private boolean subscribed;
+		private long demand;
+		private volatile boolean cancelled;
+		private boolean completed;
+		private Throwable error;
+
+		EventSubscription(Flow.Subscriber<? super USBEventType> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		void offer(USBEventType event) {
+			synchronized (buffer) {
+				if (cancelled || completed) {
+					return;
+				}
+				if (buffer.size() >= bufferSize) {
+					if (!replace(event)) {
+						buffer.pollFirst();
+						buffer.addLast(event);
+					}
+					return;
+				}
+				buffer.addLast(event);
+			}
+		}
+
+		private boolean replace(USBEventType event) {
+			for (Iterator<USBEventType> it = buffer.iterator(); it.hasNext();) {
+				if (it.next().getRootDirectory().equals(event.getRootDirectory())) {
+					it.remove();
+					buffer.addLast(event);
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public void request(long n) {
+			synchronized (buffer) {
+				if (n <= 0) {
+					error = new IllegalArgumentException("non-positive request: " + n);
+				} else {
+					demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+				}
+			}
+			schedule();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+			subscriptions.remove(this);
+			synchronized (buffer) {
+				buffer.clear();
+			}
+		}
+
+		void complete() {
+			synchronized (buffer) {
+				completed = true;
+			}
+			schedule();
+		}
+
+		void schedule() {
+			if (wip.getAndIncrement() == 0) {
+				try {
+					executor.execute(this);
+				} catch (RejectedExecutionException e) {
+					LOG.debug("Dispatch executor is stopped");
+					wip.set(0);
+				}
+			}
+		}
+
+		/**
+		 * Only one thread drains the subscription at a time
+		 */
+		@Override
+		public void run() {
+			int missed = 1;
+			do {
+				drain();
+				missed = wip.addAndGet(-missed);
+			} while (missed != 0);
+		}
+
+		private void drain() {
+			if (!subscribed) {
+				subscribed = true;
+				subscriber.onSubscribe(this);
+			}
+
+			while (!cancelled) {
+				USBEventType event;
+				boolean finished = false;
+				Throwable failure = null;
+				synchronized (buffer) {
+					if (error != null) {
+						failure = error;
+						event = null;
+					} else if (demand > 0 && !buffer.isEmpty()) {
+						event = buffer.pollFirst();
+						demand--;
+					} else {
+						event = null;
+						finished = completed && buffer.isEmpty();
+					}
+				}
+
+				if (failure != null) {
+					cancel();
+					subscriber.onError(failure);
+					return;
+				}
+				if (finished) {
+					cancel();
+					subscriber.onComplete();
+					return;
+				}
+				if (event == null) {
+					return;
+				}
+
+				try {
+					subscriber.onNext(event);
+				} catch (RuntimeException e) {
+					LOG.error("Subscriber " + subscriber + " failed on " + event + ", cancelling", e);
+					cancel();
+				}
+			}
+		}
+	}
+}
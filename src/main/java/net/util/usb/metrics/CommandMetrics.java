@@ -0,0 +1,60 @@
+package net.util.usb.metrics;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency and failures of external commands, by program name (system_profiler, powershell, reg, ...).
+ * Commands are shared by all detectors, so these metrics are global.
+ */
+public final class CommandMetrics {
+
+	private static final CommandMetrics INSTANCE = new CommandMetrics();
+
+	private final Map<String, Stats> byCommand = new ConcurrentHashMap<>();
+
+	private CommandMetrics() {
+	}
+
+	public static CommandMetrics getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * @param command program and arguments, only program is used as a key
+	 * @param nanos time from start of the command until its output is parsed
+	 * @param failed true if command has failed or timed out
+	 */
+	public void record(List<String> command, long nanos, boolean failed) {
+		String program = command.isEmpty() ? "" : command.get(0);
+		Stats stats = byCommand.get(program);
+		if (stats == null) {
+			stats = byCommand.computeIfAbsent(program, p -> new Stats());
+		}
+		stats.latency.record(nanos);
+		if (failed) {
+			stats.failures.incrementAndGet();
+		}
+	}
+
+	public Map<String, HistogramSnapshot> getLatencies() {
+		Map<String, HistogramSnapshot> result = new TreeMap<>();
+		byCommand.forEach((program, stats) -> result.put(program, stats.latency.snapshot()));
+		return Collections.unmodifiableMap(result);
+	}
+
+	public Map<String, Long> getFailures() {
+		Map<String, Long> result = new TreeMap<>();
+		byCommand.forEach((program, stats) -> result.put(program, stats.failures.get()));
+		return Collections.unmodifiableMap(result);
+	}
+
+	private static class Stats {
+		private final Histogram latency = new Histogram();
+		private final AtomicLong failures = new AtomicLong();
+	}
+}
@@ -0,0 +1,157 @@
+package net.util.usb.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Metrics of one detector. Every getter returns a snapshot, so values can be read at any time
+ * from code or over JMX. Recording is lock-free and does not allocate.
+ */
+public class DetectorMetrics implements DetectorMetricsMXBean {
+	private static final Logger LOG = LoggerFactory.getLogger(DetectorMetrics.class);
+
+	private final Histogram poll = new Histogram();
+
+	private final Histogram diff = new Histogram();
+
+	private final Histogram resolution = new Histogram();
+
+	private final Histogram dispatch = new Histogram();
+
+	private final AtomicLong resolved = new AtomicLong();
+
+	private final AtomicLong retries = new AtomicLong();
+
+	private final AtomicLong failures = new AtomicLong();
+
+	private final AtomicLong cacheHits = new AtomicLong();
+
+	private final AtomicLong staleCacheHits = new AtomicLong();
+
+	private ObjectName objectName;
+
+	public void recordPoll(long nanos) {
+		poll.record(nanos);
+	}
+
+	public void recordDiff(long nanos) {
+		diff.record(nanos);
+	}
+
+	public void recordResolved(long nanos) {
+		resolution.record(nanos);
+		resolved.incrementAndGet();
+	}
+
+	public void recordRetry() {
+		retries.incrementAndGet();
+	}
+
+	public void recordFailure() {
+		failures.incrementAndGet();
+	}
+
+	public void recordCacheHit() {
+		cacheHits.incrementAndGet();
+	}
+
+	public void recordStaleCacheHit() {
+		staleCacheHits.incrementAndGet();
+	}
+
+	public void recordDispatch(long nanos) {
+		dispatch.record(nanos);
+	}
+
+	@Override
+	public HistogramSnapshot getPollDuration() {
+		return poll.snapshot();
+	}
+
+	@Override
+	public HistogramSnapshot getDiffDuration() {
+		return diff.snapshot();
+	}
+
+	@Override
+	public HistogramSnapshot getResolutionLatency() {
+		return resolution.snapshot();
+	}
+
+	@Override
+	public HistogramSnapshot getDispatchDuration() {
+		return dispatch.snapshot();
+	}
+
+	@Override
+	public long getResolved() {
+		return resolved.get();
+	}
+
+	@Override
+	public long getRetries() {
+		return retries.get();
+	}
+
+	@Override
+	public long getFailures() {
+		return failures.get();
+	}
+
+	@Override
+	public long getCacheHits() {
+		return cacheHits.get();
+	}
+
+	@Override
+	public long getStaleCacheHits() {
+		return staleCacheHits.get();
+	}
+
+	@Override
+	public Map<String, HistogramSnapshot> getCommandLatencies() {
+		return CommandMetrics.getInstance().getLatencies();
+	}
+
+	@Override
+	public Map<String, Long> getCommandFailures() {
+		return CommandMetrics.getInstance().getFailures();
+	}
+
+	/**
+	 * Registers metrics in platform MBean server as net.util.usb:type=UsbDetector,name=<i>name</i>
+	 */
+	public synchronized void register(String name) {
+		if (objectName != null) {
+			return;
+		}
+		try {
+			ObjectName objectName = new ObjectName("net.util.usb:type=UsbDetector,name=" + ObjectName.quote(name));
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			server.registerMBean(this, objectName);
+			this.objectName = objectName;
+		} catch (JMException e) {
+			LOG.warn("Can't register metrics of detector " + name + " in JMX", e);
+		}
+	}
+
+	public synchronized void unregister() {
+		if (objectName == null) {
+			return;
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		} catch (JMException e) {
+			LOG.debug("Can't unregister " + objectName, e);
+		}
+		objectName = null;
+	}
+}
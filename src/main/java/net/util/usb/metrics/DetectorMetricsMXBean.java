@@ -0,0 +1,52 @@
+package net.util.usb.metrics;
+
+import java.util.Map;
+
+/**
+ * Metrics of one detector as seen over JMX, registered as net.util.usb:type=UsbDetector,name=...
+ */
+public interface DetectorMetricsMXBean {
+
+	/**
+	 * @return time of one check of roots: listing and diff
+	 */
+	HistogramSnapshot getPollDuration();
+
+	/**
+	 * @return time of comparing listing with known roots
+	 */
+	HistogramSnapshot getDiffDuration();
+
+	/**
+	 * @return time from device is found until its port is detected, including retries
+	 */
+	HistogramSnapshot getResolutionLatency();
+
+	/**
+	 * @return time spent in listeners
+	 */
+	HistogramSnapshot getDispatchDuration();
+
+	long getResolved();
+
+	long getRetries();
+
+	long getFailures();
+
+	/**
+	 * @return ports reported from cache of previous runs
+	 */
+	long getCacheHits();
+
+	/**
+	 * @return cached ports which turned out to be wrong and were corrected
+	 */
+	long getStaleCacheHits();
+
+	/**
+	 * @return latency of external commands by program, shared by all detectors
+	 */
+	Map<String, HistogramSnapshot> getCommandLatencies();
+
+	Map<String, Long> getCommandFailures();
+}
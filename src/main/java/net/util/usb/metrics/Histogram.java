@@ -0,0 +1,50 @@
+package net.util.usb.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histogram with power of two buckets in microseconds. Recording is lock-free and
+ * does not allocate, so it can be always on.
+ */
+public final class Histogram {
+
+	/**
+	 * last bucket holds everything longer than ~18 minutes
+	 */
+	static final int BUCKETS = 32;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+	private final AtomicLong totalMicros = new AtomicLong();
+
+	private final AtomicLong maxMicros = new AtomicLong();
+
+	/**
+	 * @param nanos duration, i.e. difference of two {@link System#nanoTime()}
+	 */
+	public void record(long nanos) {
+		long micros = Math.max(0, nanos / 1000);
+		buckets.incrementAndGet(bucket(micros));
+		totalMicros.addAndGet(micros);
+		long max;
+		while (micros > (max = maxMicros.get()) && !maxMicros.compareAndSet(max, micros)) {
+			//retry
+		}
+	}
+
+	/**
+	 * bucket i holds values from 2^(i-1) to 2^i - 1, bucket 0 holds 0
+	 */
+	static int bucket(long micros) {
+		return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+	}
+
+	public HistogramSnapshot snapshot() {
+		long[] counts = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = buckets.get(i);
+		}
+		return new HistogramSnapshot(counts, totalMicros.get(), maxMicros.get());
+	}
+}
@@ -0,0 +1,81 @@
+package net.util.usb.metrics;
+
+/**
+ * Immutable state of {@link Histogram}. Percentiles are upper bounds of buckets, so they are
+ * precise within factor of two, which is enough to see where time goes.
+ */
+public class HistogramSnapshot {
+
+	private final long[] counts;
+
+	private final long count;
+
+	private final long totalMicros;
+
+	private final long maxMicros;
+
+	HistogramSnapshot(long[] counts, long totalMicros, long maxMicros) {
+		this.counts = counts;
+		long count = 0;
+		for (long c : counts) {
+			count += c;
+		}
+		this.count = count;
+		this.totalMicros = totalMicros;
+		this.maxMicros = maxMicros;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getTotalMicros() {
+		return totalMicros;
+	}
+
+	public double getMeanMicros() {
+		return count == 0 ? 0 : (double) totalMicros / count;
+	}
+
+	public long getMaxMicros() {
+		return maxMicros;
+	}
+
+	public long getP50Micros() {
+		return percentile(0.5);
+	}
+
+	public long getP95Micros() {
+		return percentile(0.95);
+	}
+
+	public long getP99Micros() {
+		return percentile(0.99);
+	}
+
+	/**
+	 * @param quantile from 0 to 1
+	 * @return value in microseconds which is not exceeded by this part of records
+	 */
+	public long percentile(double quantile) {
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(quantile * count));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				long upper = i == 0 ? 0 : (1L << i) - 1;
+				return Math.min(upper, maxMicros);
+			}
+		}
+		return maxMicros;
+	}
+
+	@Override
+	public String toString() {
+		return "count=" + count + ", mean=" + Math.round(getMeanMicros()) + "us, p50=" + getP50Micros()
+				+ "us, p99=" + getP99Micros() + "us, max=" + maxMicros + "us";
+	}
+}
@@ -0,0 +1,117 @@
+package net.util.usb.port;
+
+/**
+ * Port of the device with details which were found by the same lookup. Details are null
+ * (capacity is -1) if OS does not report them.
+ */
+public class DeviceInfo {
+
+	private final String port;
+
+	private final String vendorId;
+
+	private final String productId;
+
+	private final String serialNumber;
+
+	private final long capacity;
+
+	private final String volumeId;
+
+	private final boolean notUsb;
+
+	public DeviceInfo(String port) {
+		this(port, null, null, null, -1, null);
+	}
+
+	/**
+	 * @param vendorId USB vendor id, 4 hex digits in lower case, i.e. 0781
+	 * @param productId USB product id, 4 hex digits in lower case
+	 * @param capacity size of the media in bytes
+	 * @param volumeId identity of the file system: UUID or volume serial number
+	 */
+	public DeviceInfo(String port, String vendorId, String productId, String serialNumber, long capacity, String volumeId) {
+		this(port, vendorId, productId, serialNumber, capacity, volumeId, false);
+	}
+
+	private DeviceInfo(String port, String vendorId, String productId, String serialNumber, long capacity, String volumeId,
+			boolean notUsb) {
+		this.port = port;
+		this.vendorId = vendorId;
+		this.productId = productId;
+		this.serialNumber = serialNumber;
+		this.capacity = capacity;
+		this.volumeId = volumeId;
+		this.notUsb = notUsb;
+	}
+
+	/**
+	 * @return result for drive which has been found in current state of the system, but not on USB
+	 *         (internal disk, network or disk image). Lookup should not be repeated for it
+	 */
+	public static DeviceInfo notUsb() {
+		return new DeviceInfo("", null, null, null, -1, null, true);
+	}
+
+	/**
+	 * @return true if drive is known not to be on USB, empty port means "not detected yet" otherwise
+	 */
+	public boolean isNotUsb() {
+		return notUsb;
+	}
+
+	/**
+	 * @return port or empty string if it is not detected
+	 */
+	public String getPort() {
+		return port;
+	}
+
+	public String getVendorId() {
+		return vendorId;
+	}
+
+	public String getProductId() {
+		return productId;
+	}
+
+	public String getSerialNumber() {
+		return serialNumber;
+	}
+
+	public long getCapacity() {
+		return capacity;
+	}
+
+	public String getVolumeId() {
+		return volumeId;
+	}
+
+	/**
+	 * @return 4 lower case hex digits from 0x0781, 0781 or 0x0781  (SanDisk Corporation), null if there are no digits
+	 */
+	public static String normalizeId(String id) {
+		if (id == null) {
+			return null;
+		}
+		String value = id.trim();
+		if (value.startsWith("0x") || value.startsWith("0X")) {
+			value = value.substring(2);
+		}
+		int end = 0;
+		while (end < value.length() && Character.digit(value.charAt(end), 16) >= 0) {
+			end++;
+		}
+		if (end == 0) {
+			return null;
+		}
+		String hex = value.substring(0, end).toLowerCase();
+		return hex.length() >= 4 ? hex : "0000".substring(hex.length()) + hex;
+	}
+
+	@Override
+	public String toString() {
+		return "DeviceInfo [port=" + port + ", vendorId=" + vendorId + ", productId=" + productId + ", serialNumber="
+				+ serialNumber + ", capacity=" + capacity + ", volumeId=" + volumeId + (notUsb ? ", notUsb" : "") + "]";
+	}
+}
@@ -1,7 +1,15 @@
 package net.util.usb.port;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+import net.util.usb.port.linux.LinuxPortDetector;
 import net.util.usb.port.macos.OSXPortDetector;
 import net.util.usb.port.windows.WindowsPortDetector;
 
@@ -18,6 +26,8 @@ public abstract class PortDetector {
             instance = new WindowsPortDetector();
         } else if (OSName.startsWith("mac")) {
             instance = new OSXPortDetector();
+        } else if (OSName.startsWith("linux")) {
+            instance = new LinuxPortDetector();
         } else {
             instance = null;
         }
@@ -31,6 +41,60 @@ public abstract class PortDetector {
 	 */
 	public abstract String getDeviceUSBPortLocation(File file) throws PortDetectionException;
 
+	/**
+	 * Same lookup as {@link #getDeviceUSBPortLocation(File)} which also returns vendor, product, serial number,
+	 * capacity and volume identity if they are available from data read for the port
+	 * @param file path to drive
+	 * @throws PortDetectionException on any Exception
+	 */
+	public DeviceInfo getDeviceInfo(File file) throws PortDetectionException {
+		return new DeviceInfo(getDeviceUSBPortLocation(file));
+	}
+
+	/**
+	 * Same as {@link #getDeviceUSBPortLocation(File)} for several drives, i.e. all drives found by one check.
+	 * Implementations answer all of them from one snapshot of the system instead of taking it for each drive
+	 * @param files paths to drives
+	 * @return port by drive in order of files, empty string in case if port cannot be read for device
+	 * @throws PortDetectionException if snapshot can't be taken
+	 */
+	public Map<File, String> getDeviceUSBPortLocations(Collection<File> files) throws PortDetectionException {
+		Map<File, String> ports = new LinkedHashMap<>();
+		getDeviceInfos(files).forEach((file, device) -> ports.put(file, device.getPort()));
+		return ports;
+	}
+
+	/**
+	 * Same as {@link #getDeviceInfo(File)} for several drives, see {@link #getDeviceUSBPortLocations(Collection)}
+	 * @param files paths to drives
+	 * @return device by drive in order of files
+	 * @throws PortDetectionException if snapshot can't be taken
+	 */
+	public Map<File, DeviceInfo> getDeviceInfos(Collection<File> files) throws PortDetectionException {
+		Map<File, DeviceInfo> devices = new LinkedHashMap<>();
+		for (File file : files) {
+			devices.put(file, getDeviceInfo(file));
+		}
+		return devices;
+	}
+
+	/**
+	 * Cheap identity of the file system mounted to the root, no processes are started.
+	 * By default it is made of total space and creation time of the root directory
+	 * @param file path to drive
+	 * @return identity or null if it can't be read
+	 */
+	public String getVolumeId(File file) {
+		try {
+			Path root = file.toPath();
+			long totalSpace = Files.getFileStore(root).getTotalSpace();
+			long created = Files.readAttributes(root, BasicFileAttributes.class).creationTime().toMillis();
+			return Long.toHexString(totalSpace) + "-" + Long.toHexString(created);
+		} catch (IOException | RuntimeException e) {
+			return null;
+		}
+	}
+
 	/**
 	 * Runs diagnostic and prints ueful information to log. Useful for debugging and reporting
 	 */
@@ -0,0 +1,199 @@
+package net.util.usb.port.linux;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Lists mount points of removable devices from /proc/self/mountinfo.
+ * <p>
+ * Buffer is reused between polls and the content is hashed while reading,
+ * so when nothing has been mounted or unmounted the file is neither parsed
+ * nor diffed.
+ */
+public class LinuxMountSource {
+	private static final Logger LOG = LoggerFactory.getLogger(LinuxMountSource.class);
+
+	private final Path sysfsRoot;
+	private final Path mountInfo;
+
+	private byte[] buffer = new byte[16 * 1024];
+	private int lastLength = -1;
+	private long lastHash;
+
+	/**
+	 * major:minor -> removable, kept only for currently mounted devices
+	 */
+	private Map<String, Boolean> removable = new HashMap<>();
+
+	public LinuxMountSource() {
+		this(Paths.get(LinuxPortDetector.SYSFS_ROOT), Paths.get(LinuxPortDetector.MOUNTINFO_PATH));
+	}
+
+	/**
+	 * @param sysfsRoot root of sysfs, can point to fake directory tree
+	 * @param mountInfo mountinfo file in format of /proc/self/mountinfo
+	 */
+	public LinuxMountSource(Path sysfsRoot, Path mountInfo) {
+		this.sysfsRoot = sysfsRoot;
+		this.mountInfo = mountInfo;
+	}
+
+	/**
+	 * @return mount points of removable devices or null if mountinfo has not been changed since last call
+	 */
+	public synchronized File[] listRoots() {
+		int length;
+		try {
+			length = read();
+		} catch (IOException e) {
+			LOG.error("Can't read " + mountInfo, e);
+			return null;
+		}
+
+		long hash = hash(length);
+		if (length == lastLength && hash == lastHash) {
+			return null;
+		}
+		lastLength = length;
+		lastHash = hash;
+
+		return parse(length);
+	}
+
+	/**
+	 * Next call of {@link #listRoots()} will parse mountinfo even if it is unchanged
+	 */
+	public synchronized void reset() {
+		lastLength = -1;
+	}
+
+	/**
+	 * procfs reports size 0, so file is read until EOF growing the buffer when needed
+	 */
+	private int read() throws IOException {
+		int length = 0;
+		try (InputStream is = Files.newInputStream(mountInfo)) {
+			int n;
+			while ((n = is.read(buffer, length, buffer.length - length)) != -1) {
+				length += n;
+				if (length == buffer.length) {
+					byte[] grown = new byte[buffer.length * 2];
+					System.arraycopy(buffer, 0, grown, 0, length);
+					buffer = grown;
+				}
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * FNV-1a
+	 */
+	private long hash(int length) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < length; i++) {
+			hash ^= buffer[i] & 0xff;
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	private File[] parse(int length) {
+		List<File> roots = new ArrayList<>();
+		Map<String, Boolean> checked = new HashMap<>();
+
+		int lineStart = 0;
+		while (lineStart < length) {
+			int lineEnd = lineStart;
+			while (lineEnd < length && buffer[lineEnd] != '\n') {
+				lineEnd++;
+			}
+
+			//36 35 8:17 / /media/user/STICK rw,nosuid,nodev shared:1 - vfat /dev/sdb1 rw
+			int majorMinorStart = skipFields(lineStart, lineEnd, 2);
+			int majorMinorEnd = fieldEnd(majorMinorStart, lineEnd);
+			int mountStart = skipFields(majorMinorEnd, lineEnd, 2);
+			int mountEnd = fieldEnd(mountStart, lineEnd);
+
+			//major 0 is used by virtual filesystems (proc, tmpfs, ...)
+			if (mountStart < lineEnd && buffer[majorMinorStart] != '0') {
+				String majorMinor = new String(buffer, majorMinorStart, majorMinorEnd - majorMinorStart, StandardCharsets.US_ASCII);
+				Boolean isRemovable = checked.get(majorMinor);
+				if (isRemovable == null) {
+					isRemovable = removable.get(majorMinor);
+					if (isRemovable == null) {
+						isRemovable = isRemovable(majorMinor);
+					}
+					checked.put(majorMinor, isRemovable);
+				}
+
+				if (isRemovable) {
+					String mountPoint = new String(buffer, mountStart, mountEnd - mountStart, StandardCharsets.UTF_8);
+					roots.add(new File(Sysfs.unescape(mountPoint)));
+				}
+			}
+
+			lineStart = lineEnd + 1;
+		}
+
+		removable = checked;
+		return roots.toArray(new File[0]);
+	}
+
+	/**
+	 * @return position of first char of field after skipping count fields
+	 */
+	private int skipFields(int pos, int lineEnd, int count) {
+		for (int i = 0; i < count && pos < lineEnd; i++) {
+			pos = fieldEnd(pos, lineEnd) + 1;
+		}
+		return Math.min(pos, lineEnd);
+	}
+
+	private int fieldEnd(int pos, int lineEnd) {
+		while (pos < lineEnd && buffer[pos] != ' ') {
+			pos++;
+		}
+		return pos;
+	}
+
+	/**
+	 * Device is removable if its disk has removable flag or it is connected through USB
+	 */
+	protected boolean isRemovable(String majorMinor) {
+		try {
+			Path disk = Sysfs.findDisk(sysfsRoot, majorMinor);
+			if (disk == null) {
+				return false;
+			}
+
+			Path removableFlag = disk.resolve("removable");
+			if (Files.exists(removableFlag)
+					&& "1".equals(new String(Files.readAllBytes(removableFlag), StandardCharsets.US_ASCII).trim())) {
+				return true;
+			}
+
+			for (Path name : disk) {
+				if (name.toString().startsWith("usb")) {
+					return true;
+				}
+			}
+			return false;
+		} catch (IOException e) {
+			LOG.debug("Can't check device " + majorMinor, e);
+			return false;
+		}
+	}
+}
@@ -0,0 +1,303 @@
+package net.util.usb.port.linux;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.util.usb.port.DeviceInfo;
+import net.util.usb.port.PortDetectionException;
+import net.util.usb.port.PortDetector;
+
+/**
+ * Reads port of the device from sysfs. No processes are spawned:
+ * mount root is mapped to block device through mountinfo, then
+ * /sys/block/&lt;dev&gt;/device is walked up to the USB interface.
+ */
+public class LinuxPortDetector extends PortDetector {
+	private static final Logger LOG = LoggerFactory.getLogger(LinuxPortDetector.class);
+
+	public static final String SYSFS_ROOT = "/sys";
+	public static final String MOUNTINFO_PATH = "/proc/self/mountinfo";
+	public static final String DEV_ROOT = "/dev";
+
+	/**
+	 * size in /sys/block/&lt;dev&gt;/size is always in 512 byte sectors
+	 */
+	private static final long SECTOR_SIZE = 512;
+
+	/**
+	 * USB interface directory, i.e. 1-2.4:1.0 (bus-port:config.interface)
+	 */
+	private static final Pattern USB_INTERFACE = Pattern.compile("\\d+-\\d+(\\.\\d+)*:\\d+\\.\\d+");
+
+	private final Path sysfsRoot;
+	private final Path mountInfo;
+	private final Path devRoot;
+
+	public LinuxPortDetector() {
+		this(Paths.get(SYSFS_ROOT), Paths.get(MOUNTINFO_PATH));
+	}
+
+	/**
+	 * @param sysfsRoot root of sysfs, can point to fake directory tree
+	 * @param mountInfo mountinfo file in format of /proc/self/mountinfo
+	 */
+	public LinuxPortDetector(Path sysfsRoot, Path mountInfo) {
+		this(sysfsRoot, mountInfo, Paths.get(DEV_ROOT));
+	}
+
+	/**
+	 * @param devRoot directory with disk/by-uuid links
+	 */
+	public LinuxPortDetector(Path sysfsRoot, Path mountInfo, Path devRoot) {
+		this.sysfsRoot = sysfsRoot;
+		this.mountInfo = mountInfo;
+		this.devRoot = devRoot;
+	}
+
+	@Override
+	public String getDeviceUSBPortLocation(File file) throws PortDetectionException {
+		return getDeviceInfo(file).getPort();
+	}
+
+	/**
+	 * Details are read from the same sysfs directories: idVendor, idProduct and serial of USB device,
+	 * size of the disk. Volume id is UUID from /dev/disk/by-uuid
+	 */
+	@Override
+	public DeviceInfo getDeviceInfo(File file) throws PortDetectionException {
+		return getDeviceInfos(Collections.singletonList(file)).get(file);
+	}
+
+	/**
+	 * mountinfo and /dev/disk/by-uuid are read once for all drives,
+	 * USB device is looked up once for all partitions of one disk
+	 */
+	@Override
+	public Map<File, DeviceInfo> getDeviceInfos(Collection<File> files) throws PortDetectionException {
+		try {
+			Map<String, String> mounts = readMounts();
+			Map<String, String> volumeIds = null;
+			Map<String, DeviceInfo> byDisk = new HashMap<>();
+			Map<File, DeviceInfo> result = new LinkedHashMap<>();
+			for (File file : files) {
+				String majorMinor = mounts.get(file.getAbsolutePath());
+				if (majorMinor == null) {
+					LOG.warn("Device has not been found in " + mountInfo + ": " + file);
+					result.put(file, new DeviceInfo(""));
+					continue;
+				}
+				String disk = findDisk(majorMinor);
+				if (disk == null) {
+					result.put(file, new DeviceInfo(""));
+					continue;
+				}
+				DeviceInfo device = byDisk.get(disk);
+				if (device == null) {
+					device = getDiskInfo(disk);
+					byDisk.put(disk, device);
+				}
+				if (device.isNotUsb()) {
+					result.put(file, device);
+					continue;
+				}
+				if (volumeIds == null) {
+					volumeIds = readVolumeIds();
+				}
+				result.put(file, new DeviceInfo(device.getPort(), device.getVendorId(), device.getProductId(),
+						device.getSerialNumber(), device.getCapacity(), findVolumeId(majorMinor, volumeIds)));
+			}
+			return result;
+		} catch (IOException | NumberFormatException e) {
+			throw new PortDetectionException(e);
+		}
+	}
+
+	/**
+	 * @param disk name of the whole disk, i.e. sdb
+	 * @return port and details of USB device, without volume id, or {@link DeviceInfo#notUsb()}
+	 */
+	private DeviceInfo getDiskInfo(String disk) throws IOException {
+		Path diskDir = sysfsRoot.resolve("block").resolve(disk);
+		Path device = diskDir.resolve("device");
+		if (!Files.exists(device)) {
+			//loop, device mapper and other virtual disks
+			return DeviceInfo.notUsb();
+		}
+
+		Path real = device.toRealPath();
+		String port = findBusPort(real);
+		if (port.isEmpty()) {
+			//sysfs is current, disk without USB interface above it is not on USB
+			return DeviceInfo.notUsb();
+		}
+
+		Path usbDevice = findUsbDevice(real);
+		String sectors = readAttribute(diskDir.resolve("size"));
+		long capacity = sectors == null ? -1 : Long.parseLong(sectors) * SECTOR_SIZE;
+		return new DeviceInfo(port,
+				DeviceInfo.normalizeId(readAttribute(usbDevice.resolve("idVendor"))),
+				DeviceInfo.normalizeId(readAttribute(usbDevice.resolve("idProduct"))),
+				readAttribute(usbDevice.resolve("serial")),
+				capacity,
+				null);
+	}
+
+	/**
+	 * @return UUID of file system from /dev/disk/by-uuid
+	 */
+	@Override
+	public String getVolumeId(File file) {
+		try {
+			String majorMinor = findMajorMinor(file.getAbsolutePath());
+			return majorMinor == null ? null : findVolumeId(majorMinor);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return major:minor of device mounted to rootPath or null if not mounted
+	 */
+	protected String findMajorMinor(String rootPath) throws IOException {
+		return readMounts().get(rootPath);
+	}
+
+	/**
+	 * @return major:minor by mount point, first mount wins
+	 */
+	private Map<String, String> readMounts() throws IOException {
+		Map<String, String> mounts = new HashMap<>();
+		for (String line : Files.readAllLines(mountInfo, StandardCharsets.UTF_8)) {
+			//36 35 8:17 / /media/user/STICK rw,nosuid,nodev shared:1 - vfat /dev/sdb1 rw
+			String[] parts = line.split(" ");
+			if (parts.length > 4) {
+				mounts.putIfAbsent(Sysfs.unescape(parts[4]), parts[2]);
+			}
+		}
+		return mounts;
+	}
+
+	/**
+	 * @return name of the whole disk (sdb for sdb1) or null if device is unknown to sysfs
+	 */
+	protected String findDisk(String majorMinor) throws IOException {
+		Path disk = Sysfs.findDisk(sysfsRoot, majorMinor);
+		return disk == null ? null : disk.getFileName().toString();
+	}
+
+	/**
+	 * Walks up from scsi device to USB interface
+	 * @return bus-port path i.e. 1-2.4 or empty string if device is not on USB
+	 */
+	protected String findBusPort(Path device) {
+		for (Path current = device; current != null; current = current.getParent()) {
+			Path name = current.getFileName();
+			if (name != null && USB_INTERFACE.matcher(name.toString()).matches()) {
+				String iface = name.toString();
+				return iface.substring(0, iface.indexOf(':'));
+			}
+		}
+		return "";
+	}
+
+	/**
+	 * @return USB device directory (1-2.4) which owns the interface, device is under the interface
+	 */
+	private static Path findUsbDevice(Path device) {
+		for (Path current = device; current != null; current = current.getParent()) {
+			Path name = current.getFileName();
+			if (name != null && USB_INTERFACE.matcher(name.toString()).matches()) {
+				return current.getParent();
+			}
+		}
+		return device;
+	}
+
+	/**
+	 * @return UUID of file system on the partition or null if it has no UUID link
+	 */
+	protected String findVolumeId(String majorMinor) throws IOException {
+		return findVolumeId(majorMinor, readVolumeIds());
+	}
+
+	private String findVolumeId(String majorMinor, Map<String, String> volumeIds) throws IOException {
+		Path block = sysfsRoot.resolve("dev").resolve("block").resolve(majorMinor);
+		if (!Files.exists(block)) {
+			return null;
+		}
+		return volumeIds.get(block.toRealPath().getFileName().toString());
+	}
+
+	/**
+	 * @return UUID by partition name (sdb1) from /dev/disk/by-uuid links
+	 */
+	private Map<String, String> readVolumeIds() throws IOException {
+		Map<String, String> volumeIds = new HashMap<>();
+		Path byUuid = devRoot.resolve("disk").resolve("by-uuid");
+		if (!Files.isDirectory(byUuid)) {
+			return volumeIds;
+		}
+		try (Stream<Path> links = Files.list(byUuid)) {
+			links.forEach(link -> {
+				try {
+					if (Files.isSymbolicLink(link)) {
+						volumeIds.putIfAbsent(Files.readSymbolicLink(link).getFileName().toString(), link.getFileName().toString());
+					}
+				} catch (IOException e) {
+					//link has been removed while listing
+				}
+			});
+		}
+		return volumeIds;
+	}
+
+	/**
+	 * @return trimmed content of sysfs attribute or null if it is absent
+	 */
+	private static String readAttribute(Path attribute) throws IOException {
+		if (!Files.isRegularFile(attribute)) {
+			return null;
+		}
+		String value = new String(Files.readAllBytes(attribute), StandardCharsets.UTF_8).trim();
+		return value.isEmpty() ? null : value;
+	}
+
+	@Override
+	public void runDiagnostic() {
+		LOG.info("Running diagnostic: " + mountInfo);
+		try {
+			LOG.info(String.join("\n", Files.readAllLines(mountInfo, StandardCharsets.UTF_8)));
+		} catch (IOException e) {
+			LOG.error("Can't read " + mountInfo, e);
+		}
+
+		Path blocks = sysfsRoot.resolve("block");
+		LOG.info("Running diagnostic: " + blocks);
+		try (Stream<Path> list = Files.list(blocks)) {
+			list.forEach(block -> {
+				try {
+					Path device = block.resolve("device");
+					LOG.info(block.getFileName() + " -> " + (Files.exists(device) ? device.toRealPath() : "-"));
+				} catch (IOException e) {
+					LOG.info(block.getFileName() + " -> " + e.getMessage());
+				}
+			});
+		} catch (IOException e) {
+			LOG.error("Can't list " + blocks, e);
+		}
+	}
+}
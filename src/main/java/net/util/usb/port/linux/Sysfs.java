@@ -0,0 +1,51 @@
+package net.util.usb.port.linux;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Helpers shared by linux port detector and mount source
+ */
+final class Sysfs {
+
+	private Sysfs() {
+	}
+
+	/**
+	 * @return sysfs directory of the whole disk (sdb for sdb1) or null if device is unknown to sysfs
+	 */
+	static Path findDisk(Path sysfsRoot, String majorMinor) throws IOException {
+		Path block = sysfsRoot.resolve("dev").resolve("block").resolve(majorMinor);
+		if (!Files.exists(block)) {
+			return null;
+		}
+
+		Path real = block.toRealPath();
+		if (Files.exists(real.resolve("partition"))) {
+			real = real.getParent();
+		}
+		return real;
+	}
+
+	/**
+	 * mountinfo escapes space, tab, newline and backslash as octal i.e. \040
+	 */
+	static String unescape(String value) {
+		if (value.indexOf('\\') < 0) {
+			return value;
+		}
+
+		StringBuilder sb = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '\\' && i + 3 < value.length()) {
+				sb.append((char) Integer.parseInt(value.substring(i + 1, i + 4), 8));
+				i += 3;
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+}
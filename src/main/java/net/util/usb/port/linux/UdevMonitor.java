@@ -0,0 +1,259 @@
+package net.util.usb.port.linux;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps one "udevadm monitor" process running and reports block device events from its output
+ * as soon as they are printed. Process is started again if it dies, with growing delay.
+ * <p>
+ * Command can be replaced, e.g. by a script which prints recorded output.
+ */
+public class UdevMonitor implements Closeable {
+	private static final Logger LOG = LoggerFactory.getLogger(UdevMonitor.class);
+
+	public static final List<String> DEFAULT_COMMAND = Collections.unmodifiableList(
+			Arrays.asList("udevadm", "monitor", "--udev", "--property", "--subsystem-match=block"));
+
+	private static final long MIN_RESTART_DELAY = 500;
+
+	private static final long MAX_RESTART_DELAY = 30_000;
+
+	private final List<String> command;
+
+	private final Listener listener;
+
+	private volatile boolean closed;
+
+	private volatile boolean running;
+
+	private volatile Process process;
+
+	private Thread thread;
+
+	public UdevMonitor(Listener listener) {
+		this(DEFAULT_COMMAND, listener);
+	}
+
+	/**
+	 * @param command program which prints events in format of udevadm monitor --property
+	 */
+	public UdevMonitor(List<String> command, Listener listener) {
+		this.command = command;
+		this.listener = listener;
+	}
+
+	/**
+	 * Starts the process on its own daemon thread
+	 */
+	public synchronized void start() {
+		if (thread != null || closed) {
+			return;
+		}
+		thread = new Thread(this::run, "usb-detector-udev");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * @return true while process is running and its output is read
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Kills the process, it is not started again
+	 */
+	@Override
+	public void close() {
+		Thread thread;
+		synchronized (this) {
+			closed = true;
+			thread = this.thread;
+		}
+		kill(process);
+		if (thread != null) {
+			thread.interrupt();
+		}
+	}
+
+	private void run() {
+		long delay = MIN_RESTART_DELAY;
+		while (!closed) {
+			long started = System.nanoTime();
+			try {
+				Process monitor = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.DISCARD).start();
+				process = monitor;
+				if (closed) {
+					break;
+				}
+				try (BufferedReader reader = new BufferedReader(new InputStreamReader(monitor.getInputStream(), StandardCharsets.UTF_8))) {
+					running = true;
+					listener.started();
+					read(reader, listener::event);
+				}
+			} catch (IOException e) {
+				if (!closed) {
+					LOG.debug("udev monitor has failed", e);
+				}
+			} finally {
+				kill(process);
+				if (running) {
+					running = false;
+					listener.stopped();
+				}
+			}
+
+			if (closed) {
+				break;
+			}
+			//process which has worked for a while is restarted quickly
+			if (System.nanoTime() - started > TimeUnit.MILLISECONDS.toNanos(MAX_RESTART_DELAY)) {
+				delay = MIN_RESTART_DELAY;
+			}
+			LOG.warn("udev monitor has stopped, restarting in " + delay + " ms: " + String.join(" ", command));
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException e) {
+				break;
+			}
+			delay = Math.min(delay * 2, MAX_RESTART_DELAY);
+		}
+		kill(process);
+	}
+
+	private static void kill(Process process) {
+		if (process != null && process.isAlive()) {
+			process.descendants().forEach(ProcessHandle::destroyForcibly);
+			process.destroyForcibly();
+		}
+	}
+
+	/**
+	 * Reads events until end of output. Every event is a block of KEY=VALUE lines ended by empty line:
+	 * <pre>
+	 * UDEV  [1234.567890] add      /devices/.../block/sdb/sdb1 (block)
+	 * ACTION=add
+	 * DEVPATH=/devices/.../block/sdb/sdb1
+	 * SUBSYSTEM=block
+	 * DEVNAME=/dev/sdb1
+	 * DEVTYPE=partition
+	 * </pre>
+	 * Other lines are skipped
+	 */
+	static void read(BufferedReader reader, Consumer<UdevEvent> consumer) throws IOException {
+		Map<String, String> properties = new LinkedHashMap<>();
+		String line;
+		while ((line = reader.readLine()) != null) {
+			if (line.isEmpty()) {
+				properties = emit(properties, consumer);
+				continue;
+			}
+			int eq = line.indexOf('=');
+			if (eq > 0 && isKey(line, eq)) {
+				properties.put(line.substring(0, eq), line.substring(eq + 1));
+			}
+		}
+		emit(properties, consumer);
+	}
+
+	private static Map<String, String> emit(Map<String, String> properties, Consumer<UdevEvent> consumer) {
+		if (properties.isEmpty()) {
+			return properties;
+		}
+		if (properties.containsKey(UdevEvent.ACTION)) {
+			consumer.accept(new UdevEvent(properties));
+		}
+		return new LinkedHashMap<>();
+	}
+
+	private static boolean isKey(String line, int end) {
+		for (int i = 0; i < end; i++) {
+			char c = line.charAt(i);
+			if (!(c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_')) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public interface Listener {
+		/**
+		 * Called from the thread of the monitor, should not block
+		 */
+		void event(UdevEvent event);
+
+		/**
+		 * Process has been started, events which happened before are not reported
+		 */
+		default void started() {
+		}
+
+		/**
+		 * Process has died, events are lost until it is started again
+		 */
+		default void stopped() {
+		}
+	}
+
+	/**
+	 * Properties of one udev event
+	 */
+	public static class UdevEvent {
+		static final String ACTION = "ACTION";
+
+		private final Map<String, String> properties;
+
+		UdevEvent(Map<String, String> properties) {
+			this.properties = Collections.unmodifiableMap(properties);
+		}
+
+		/**
+		 * @return add, remove, change, ...
+		 */
+		public String getAction() {
+			return properties.get(ACTION);
+		}
+
+		/**
+		 * @return i.e. /dev/sdb1
+		 */
+		public String getDevName() {
+			return properties.get("DEVNAME");
+		}
+
+		/**
+		 * @return disk or partition
+		 */
+		public String getDevType() {
+			return properties.get("DEVTYPE");
+		}
+
+		public String getProperty(String name) {
+			return properties.get(name);
+		}
+
+		public Map<String, String> getProperties() {
+			return properties;
+		}
+
+		@Override
+		public String toString() {
+			return "UdevEvent [action=" + getAction() + ", devName=" + getDevName() + ", devType=" + getDevType() + "]";
+		}
+	}
+}
@@ -1,27 +1,28 @@
 package net.util.usb.port.macos;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.IOException;
-import java.text.ParseException;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.xml.sax.SAXException;
-
-import com.dd.plist.NSArray;
-import com.dd.plist.NSDictionary;
-import com.dd.plist.NSObject;
-import com.dd.plist.NSString;
-import com.dd.plist.PropertyListFormatException;
-import com.dd.plist.PropertyListParser;
 
+import net.util.usb.port.DeviceInfo;
 import net.util.usb.port.PortDetectionException;
 import net.util.usb.port.PortDetector;
 import net.util.usb.port.utils.ExecCommand;
+import net.util.usb.port.utils.SnapshotCache;
 
 public class OSXPortDetector extends PortDetector {
 	private static final Logger LOG = LoggerFactory.getLogger(OSXPortDetector.class);
@@ -32,23 +33,75 @@ public class OSXPortDetector extends PortDetector {
 	public static final String DISK_UTIL_DEVICE_FMT = " %s";
 	public static final String DEVICE_NAME_FMT = "/dev/%s";
 	public static final String INFO_MOUNTPOINT = "Mount Point";
+	public static final String INFO_PROTOCOL = "Protocol";
+	public static final String PROTOCOL_USB = "USB";
+
+	public static final String VOLUMES_PATH = "/Volumes";
+
+	private final SnapshotCache<ProfilerSnapshot> cache = new SnapshotCache<>(OSXPortDetector::listVolumes, this::loadSnapshot);
+
+	@Override
+	public String getDeviceUSBPortLocation(File file) throws PortDetectionException {
+		return getDeviceInfo(file).getPort();
+	}
+
+	/**
+	 * Details come from the same system_profiler snapshot as location
+	 */
+	@Override
+	public DeviceInfo getDeviceInfo(File file) throws PortDetectionException {
+		return getDeviceInfos(Collections.singletonList(file)).get(file);
+	}
 
+	/**
+	 * All devices are found in one system_profiler snapshot, media without mount point in it
+	 * are looked up with diskutil once for all drives. Drive which is not in the snapshot is checked with
+	 * diskutil: snapshot is taken again only for USB drive, other ones are reported as {@link DeviceInfo#notUsb()}
+	 */
 	@Override
-	public synchronized String getDeviceUSBPortLocation(File file) throws PortDetectionException {
-		String result = "";
-		String rootPath = file.getAbsolutePath();
+	public Map<File, DeviceInfo> getDeviceInfos(Collection<File> files) throws PortDetectionException {
+		Map<File, DeviceInfo> result = new LinkedHashMap<>();
 		try {
-			String plistXml = ExecCommand.exec(PROFILER_CMD);
-			result = findDeviceLocation(rootPath, plistXml);
-		} catch (IOException | PropertyListFormatException | ParseException | ParserConfigurationException | SAXException e) {
-			throw new IllegalStateException(e);
+			ProfilerSnapshot snapshot = cache.get();
+			boolean missing = false;
+			//diskutil is run once for each media, not for each drive
+			Map<String, String> mountPoints = new HashMap<>();
+			Function<String, String> mountPointByDevice = name -> mountPoints.computeIfAbsent(name, this::findMountPointByDevice);
+			for (File file : files) {
+				DeviceInfo device = snapshot.findDevice(file.getAbsolutePath(), mountPointByDevice);
+				if (device.getPort().equals("")) {
+					if (!isOnUsb(file)) {
+						//system_profiler has only USB devices, internal disk or disk image is never found in it
+						LOG.debug("Drive is not on USB: " + file);
+						device = DeviceInfo.notUsb();
+					} else {
+						LOG.warn("Device has not been found in system_profiler: " + file);
+						missing = true;
+					}
+				}
+				result.put(file, device);
+			}
+			if (missing) {
+				//profiler may not see just mounted device yet, next call should take new snapshot
+				cache.invalidate(snapshot);
+			}
+		} catch (Exception e) {
+			throw new PortDetectionException(e);
 		}
+		return result;
+	}
 
-		if (result.equals("")) {
-			LOG.warn("Device has not been found in system_profiler!");
-		}
+	private ProfilerSnapshot loadSnapshot() throws Exception {
+		return ExecCommand.exec(PROFILER_CMD, ProfilerParser::parse);
+	}
 
-		return result;
+	private static List<String> listVolumes() {
+		String[] names = new File(VOLUMES_PATH).list();
+		if (names == null) {
+			return Collections.emptyList();
+		}
+		Arrays.sort(names);
+		return Arrays.asList(names);
 	}
 
 	@Override
@@ -59,55 +112,9 @@ public class OSXPortDetector extends PortDetector {
 		LOG.info(ExecCommand.exec(DISK_UTIL_CMD + DISK_UTIL_ALL));
 	}
 
-	protected String findDeviceLocation(String rootPath, String plistXml) throws IOException, PropertyListFormatException,
-			ParseException, ParserConfigurationException, SAXException {
-		NSArray devices = (NSArray) PropertyListParser.parse(plistXml.getBytes());
-		String result = traverseItems(devices, rootPath);
-		if (StringUtils.isNotBlank(result)) {
-			result = result.trim();
-		}
-		return result;
-	}
-
-	private String traverseItems(NSArray items, String root) {
-		for (NSObject nsObject : Arrays.asList(items.getArray())) {
-			if (nsObject instanceof NSDictionary) {
-				NSDictionary device = (NSDictionary) nsObject;
-
-				if (device.containsKey("Media")) {
-					for (NSObject media : Arrays.asList(((NSArray)device.get("Media")).getArray())) {
-						if (media instanceof NSDictionary) {
-							if (((NSDictionary) media).containsKey("volumes")) {
-								for (NSObject volumeObj : Arrays.asList(((NSArray) ((NSDictionary) media).get("volumes")).getArray())) {
-									NSDictionary volume = (NSDictionary) volumeObj;
-									if (volume.containsKey("mount_point")) {
-										NSString mountPoint = (NSString) volume.get("mount_point");
-										if (root.equals(mountPoint.getContent())) {
-											return ((NSString) device.get("location_id")).getContent().split("/")[0];
-										}
-									}
-								}
-							} else { // no volumes, look in df
-								String fullDeviceName = String.format(DEVICE_NAME_FMT, ((NSString) ((NSDictionary) media).get("bsd_name")).getContent());
-								String mountPoint = findMountPointByDevice(fullDeviceName);
-								if (mountPoint.equals(root)) {
-									return ((NSString) device.get("location_id")).getContent().split("/")[0];
-								}
-							}
-						}
-					}
-				}
-
-				if (device.containsKey("_items")) {
-					String result = traverseItems((NSArray) device.get("_items"), root);
-					if (!result.equals("")) {
-						return result;
-					}
-				}
-			}
-		}
-
-		return "";
+	protected String findDeviceLocation(String rootPath, String plistXml) throws XMLStreamException {
+		ProfilerSnapshot snapshot = ProfilerParser.parse(new ByteArrayInputStream(plistXml.getBytes(StandardCharsets.UTF_8)), rootPath);
+		return snapshot.find(rootPath, this::findMountPointByDevice);
 	}
 
 	protected String findMountPointByDevice(String deviceName) {
@@ -128,6 +135,21 @@ public class OSXPortDetector extends PortDetector {
 		return mountPoint;
 	}
 
+	/**
+	 * @return true if diskutil reports USB protocol for the drive, false for other protocols or if it can't be read
+	 */
+	protected boolean isOnUsb(File root) {
+		//path is passed as one argument, volume names have spaces
+		String info = ExecCommand.exec(new String[] { "diskutil", "info", root.getAbsolutePath() });
+		if (StringUtils.isBlank(info)) {
+			return false;
+		}
+		return Arrays.stream(info.split("\\n"))
+				.map(line -> line.split(":", 2))
+				.filter(parts -> parts.length == 2 && parts[0].trim().equals(INFO_PROTOCOL))
+				.anyMatch(parts -> parts[1].trim().equals(PROTOCOL_USB));
+	}
+
 	protected String executeDiskUtil(String deviceName) {
 		return ExecCommand.exec(DISK_UTIL_CMD + String.format(DISK_UTIL_DEVICE_FMT, deviceName));
 	}
@@ -0,0 +1,299 @@
+package net.util.usb.port.macos;
+
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import net.util.usb.port.DeviceInfo;
+
+/**
+ * Streaming parser of system_profiler SPUSBDataType -xml output. Only location_id,
+ * Media, volumes, mount_point and bsd_name keys are tracked, plus vendor_id, product_id, serial_num,
+ * size_in_bytes and volume_uuid for device details. Nothing else is kept in memory.
+ */
+class ProfilerParser {
+
+	private static final XMLInputFactory FACTORY = XMLInputFactory.newInstance();
+	static {
+		//plist has DOCTYPE pointing to apple.com, it should not be loaded
+		FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+	}
+
+	private final Map<String, String> locationByMountPoint = new LinkedHashMap<>();
+	private final Map<String, String> locationByBsdName = new LinkedHashMap<>();
+	private final Map<String, DeviceInfo> deviceByLocation = new LinkedHashMap<>();
+	private final Map<String, String> volumeIdByMountPoint = new LinkedHashMap<>();
+
+	private final Deque<Frame> stack = new ArrayDeque<>();
+
+	/**
+	 * mount point to look for, parsing stops as soon as it is found. null to index everything
+	 */
+	private final String target;
+
+	private ProfilerParser(String target) {
+		this.target = target;
+	}
+
+	/**
+	 * @return snapshot with all mount points from the output
+	 */
+	static ProfilerSnapshot parse(InputStream plist) throws XMLStreamException {
+		ProfilerParser parser = new ProfilerParser(null);
+		parser.read(plist);
+		return parser.toSnapshot();
+	}
+
+	/**
+	 * @return snapshot which contains target mount point if it has volume in the output,
+	 *         reading stops as soon as it is found
+	 */
+	static ProfilerSnapshot parse(InputStream plist, String target) throws XMLStreamException {
+		ProfilerParser parser = new ProfilerParser(target);
+		parser.read(plist);
+		return parser.toSnapshot();
+	}
+
+	private ProfilerSnapshot toSnapshot() {
+		return new ProfilerSnapshot(Collections.unmodifiableMap(locationByMountPoint),
+				Collections.unmodifiableMap(locationByBsdName), Collections.unmodifiableMap(deviceByLocation),
+				Collections.unmodifiableMap(volumeIdByMountPoint));
+	}
+
+	private void read(InputStream plist) throws XMLStreamException {
+		XMLStreamReader reader = FACTORY.createXMLStreamReader(plist);
+		try {
+			while (reader.hasNext()) {
+				int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					if (startElement(reader)) {
+						return;
+					}
+				} else if (event == XMLStreamConstants.END_ELEMENT) {
+					if (endElement(reader.getLocalName())) {
+						return;
+					}
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * @return true if target has been found
+	 */
+	private boolean startElement(XMLStreamReader reader) throws XMLStreamException {
+		String name = reader.getLocalName();
+		Frame parent = stack.peek();
+
+		switch (name) {
+		case "array":
+			if (parent != null && parent.dict && parent.role == Role.MEDIA && "volumes".equals(parent.key)) {
+				parent.hasVolumes = true;
+			}
+			stack.push(new Frame(false, parent == null ? Role.ROOT : parent.role, parent == null ? null : parent.key, parent));
+			if (parent != null) {
+				parent.key = null;
+			}
+			return false;
+		case "dict":
+			stack.push(new Frame(true, dictRole(parent), null, parent));
+			if (parent != null && parent.dict) {
+				parent.key = null;
+			}
+			return false;
+		case "key":
+			if (parent != null && parent.dict) {
+				parent.key = reader.getElementText();
+			}
+			return false;
+		case "string":
+			if (parent != null && parent.dict) {
+				String key = parent.key;
+				parent.key = null;
+				return value(parent, key, reader.getElementText());
+			}
+			return false;
+		case "integer":
+			if (parent != null && parent.dict && parent.role == Role.MEDIA && "size_in_bytes".equals(parent.key)) {
+				parent.key = null;
+				Frame device = parent.device();
+				String size = reader.getElementText().trim();
+				if (device != null && device.capacity < 0 && !size.isEmpty()) {
+					device.capacity = Long.parseLong(size);
+				}
+				return false;
+			}
+			if (parent != null && parent.dict) {
+				parent.key = null;
+			}
+			return false;
+		default:
+			//other values (true, data, ...) are not needed
+			if (parent != null && parent.dict) {
+				parent.key = null;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Role of the dict is defined by array it belongs to: devices are in root or _items arrays,
+	 * media is in Media array of device, volume is in volumes array of media
+	 */
+	private static Role dictRole(Frame parent) {
+		if (parent == null || parent.dict) {
+			return Role.OTHER;
+		}
+		if (parent.role == Role.ROOT || (parent.role == Role.DEVICE && "_items".equals(parent.arrayKey))) {
+			return Role.DEVICE;
+		}
+		if (parent.role == Role.DEVICE && "Media".equals(parent.arrayKey)) {
+			return Role.MEDIA;
+		}
+		if (parent.role == Role.MEDIA && "volumes".equals(parent.arrayKey)) {
+			return Role.VOLUME;
+		}
+		return Role.OTHER;
+	}
+
+	private boolean value(Frame frame, String key, String value) {
+		if (frame.role == Role.DEVICE) {
+			if ("vendor_id".equals(key)) {
+				frame.vendorId = DeviceInfo.normalizeId(value);
+			} else if ("product_id".equals(key)) {
+				frame.productId = DeviceInfo.normalizeId(value);
+			} else if ("serial_num".equals(key)) {
+				frame.serial = value;
+			}
+		}
+		if (frame.role == Role.VOLUME && "volume_uuid".equals(key)) {
+			frame.volumeId = value;
+		}
+		if (frame.role == Role.DEVICE && "location_id".equals(key)) {
+			frame.location = value.split("/")[0].trim();
+			if (target != null && frame.mountPoints.contains(target)) {
+				locationByMountPoint.putIfAbsent(target, frame.location);
+				return true;
+			}
+			return false;
+		}
+		if (frame.role == Role.MEDIA && "bsd_name".equals(key)) {
+			frame.bsdName = value;
+		}
+		if (frame.role == Role.VOLUME && "mount_point".equals(key)) {
+			frame.mountPoint = value;
+			Frame device = frame.device();
+			if (device == null) {
+				return false;
+			}
+			device.mountPoints.add(value);
+			if (value.equals(target) && device.location != null) {
+				locationByMountPoint.putIfAbsent(value, device.location);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if target has been found
+	 */
+	private boolean endElement(String name) {
+		if (!"array".equals(name) && !"dict".equals(name)) {
+			return false;
+		}
+
+		Frame frame = stack.pop();
+		if (frame.role == Role.VOLUME && frame.dict && frame.mountPoint != null && frame.volumeId != null) {
+			volumeIdByMountPoint.putIfAbsent(frame.mountPoint, frame.volumeId);
+		}
+		if (frame.role == Role.MEDIA && frame.dict && !frame.hasVolumes && frame.bsdName != null) {
+			Frame device = frame.device();
+			if (device != null) {
+				device.bsdNames.add(frame.bsdName);
+			}
+		}
+
+		if (frame.role == Role.DEVICE && frame.dict && frame.location != null) {
+			for (String mountPoint : frame.mountPoints) {
+				locationByMountPoint.putIfAbsent(mountPoint, frame.location);
+			}
+			for (String bsdName : frame.bsdNames) {
+				locationByBsdName.putIfAbsent(bsdName, frame.location);
+			}
+			deviceByLocation.putIfAbsent(frame.location,
+					new DeviceInfo(frame.location, frame.vendorId, frame.productId, frame.serial, frame.capacity, null));
+			return target != null && frame.mountPoints.contains(target);
+		}
+		return false;
+	}
+
+	private enum Role {
+		ROOT, DEVICE, MEDIA, VOLUME, OTHER
+	}
+
+	/**
+	 * dict or array on the stack
+	 */
+	private static class Frame {
+		private final boolean dict;
+		private final Role role;
+		/**
+		 * for arrays - key of the array in parent dict
+		 */
+		private final String arrayKey;
+		private final Frame owner;
+
+		/**
+		 * for dicts - last read key
+		 */
+		private String key;
+
+		private String location;
+		private final List<String> mountPoints = new ArrayList<>(1);
+		private final List<String> bsdNames = new ArrayList<>(1);
+
+		private String bsdName;
+		private boolean hasVolumes;
+
+		private String vendorId;
+		private String productId;
+		private String serial;
+		private long capacity = -1;
+
+		private String mountPoint;
+		private String volumeId;
+
+		Frame(boolean dict, Role role, String arrayKey, Frame owner) {
+			this.dict = dict;
+			this.role = role;
+			this.arrayKey = arrayKey;
+			this.owner = owner;
+		}
+
+		/**
+		 * @return device dict which owns this media or volume
+		 */
+		Frame device() {
+			for (Frame frame = owner; frame != null; frame = frame.owner) {
+				if (frame.dict && frame.role == Role.DEVICE) {
+					return frame;
+				}
+			}
+			return null;
+		}
+	}
+}
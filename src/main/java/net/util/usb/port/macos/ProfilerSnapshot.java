@@ -0,0 +1,66 @@
+package net.util.usb.port.macos;
+
+import java.util.Map;
+import java.util.function.Function;
+
+import net.util.usb.port.DeviceInfo;
+
+/**
+ * Parsed output of system_profiler: mount point -> location_id, location_id -> device details
+ */
+class ProfilerSnapshot {
+
+	private final Map<String, String> locationByMountPoint;
+
+	/**
+	 * media without volumes, mount point should be read by diskutil
+	 */
+	private final Map<String, String> locationByBsdName;
+
+	private final Map<String, DeviceInfo> deviceByLocation;
+
+	private final Map<String, String> volumeIdByMountPoint;
+
+	ProfilerSnapshot(Map<String, String> locationByMountPoint, Map<String, String> locationByBsdName,
+			Map<String, DeviceInfo> deviceByLocation, Map<String, String> volumeIdByMountPoint) {
+		this.locationByMountPoint = locationByMountPoint;
+		this.locationByBsdName = locationByBsdName;
+		this.deviceByLocation = deviceByLocation;
+		this.volumeIdByMountPoint = volumeIdByMountPoint;
+	}
+
+	/**
+	 * @return location with vendor, product, serial number and capacity of the device, volume_uuid of the volume
+	 */
+	DeviceInfo findDevice(String root, Function<String, String> mountPointByDevice) {
+		String location = find(root, mountPointByDevice);
+		DeviceInfo device = deviceByLocation.get(location);
+		String volumeId = volumeIdByMountPoint.get(root);
+		if (device == null) {
+			return new DeviceInfo(location, null, null, null, -1, volumeId);
+		}
+		return new DeviceInfo(location, device.getVendorId(), device.getProductId(), device.getSerialNumber(),
+				device.getCapacity(), volumeId);
+	}
+
+	/**
+	 * @param root mount point of the device
+	 * @param mountPointByDevice resolves mount point for /dev/... of media without volumes
+	 * @return location or empty string if device is not present in snapshot
+	 */
+	String find(String root, Function<String, String> mountPointByDevice) {
+		String location = locationByMountPoint.get(root);
+		if (location != null) {
+			return location;
+		}
+
+		for (Map.Entry<String, String> media : locationByBsdName.entrySet()) {
+			String mountPoint = mountPointByDevice.apply(String.format(OSXPortDetector.DEVICE_NAME_FMT, media.getKey()));
+			if (root.equals(mountPoint)) {
+				return media.getValue();
+			}
+		}
+
+		return "";
+	}
+}
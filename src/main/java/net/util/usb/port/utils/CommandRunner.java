@@ -0,0 +1,48 @@
+package net.util.usb.port.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * Runs external commands. Implementation can be replaced, i.e. by {@link ReplayCommandRunner} to run
+ * detectors against recorded outputs.
+ *
+ * @see ExecCommand#setRunner(CommandRunner)
+ */
+public interface CommandRunner {
+
+	/**
+	 * @param command program and its arguments
+	 * @param parser reads stdout while command is running. It may be called for several attempts of the
+	 *               command at the same time (see {@link HedgingCommandRunner}), so it must be stateless or thread-safe
+	 * @return result of the parser
+	 */
+	<T> T run(List<String> command, OutputParser<T> parser) throws Exception;
+
+	/**
+	 * @return charset of the command output
+	 */
+	Charset getCharset();
+
+	/**
+	 * @return whole stdout of the command
+	 */
+	default String run(List<String> command) throws Exception {
+		return run(command, output -> readFully(output, getCharset()));
+	}
+
+	static String readFully(InputStream output, Charset charset) throws IOException {
+		Reader reader = new InputStreamReader(output, charset);
+		StringBuilder sb = new StringBuilder(8192);
+		char[] buffer = new char[8192];
+		int n;
+		while ((n = reader.read(buffer)) != -1) {
+			sb.append(buffer, 0, n);
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,16 @@
+package net.util.usb.port.utils;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Command has not been finished in time and has been killed with all its children
+ */
+public class CommandTimeoutException extends IOException {
+
+	private static final long serialVersionUID = 3186504751395238437L;
+
+	public CommandTimeoutException(List<String> command, long timeoutMillis) {
+		super("Command has not been finished in " + timeoutMillis + " ms: " + String.join(" ", command));
+	}
+}
@@ -1,20 +1,141 @@
 package net.util.usb.port.utils;
 
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.StringTokenizer;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.commons.lang3.SystemUtils;
+
+import net.util.usb.metrics.CommandMetrics;
+
 public class ExecCommand {
 
+	private static volatile CommandRunner runner = new HedgingCommandRunner(new ProcessCommandRunner(defaultCharset()),
+			ExecCommand::isReadOnly);
+
+	/**
+	 * false after {@link #setRunner(CommandRunner)}
+	 */
+	private static volatile boolean defaultRunner = true;
+
+	private static ExecutorService executor;
+
+	/**
+	 * @param command program and arguments separated by whitespace
+	 * @return stdout of the command or null if it can't be run
+	 */
 	public static String exec(String command) {
+		List<String> args = split(command);
+		long start = System.nanoTime();
         try {
-            Process process = Runtime.getRuntime().exec(command);
+            String result = runner.run(args);
+            record(args, start, false);
+            return result;
+        }
+        catch (Exception e) {
+            record(args, start, true);
+            return null;
+        }
+	}
 
-            StreamReader reader = new StreamReader(process.getInputStream());
-            reader.start();
-            process.waitFor();
-            reader.join();
-            return reader.getResult();
+	/**
+	 * @param command program and arguments, arguments are not split by spaces
+	 */
+	public static String exec(String[] command) {
+		List<String> args = Arrays.asList(command);
+		long start = System.nanoTime();
+        try {
+            String result = runner.run(args);
+            record(args, start, false);
+            return result;
         }
         catch (Exception e) {
+            record(args, start, true);
             return null;
         }
+	}
+
+	/**
+	 * Passes stdout of the command directly to the parser, without collecting it to string
+	 */
+	public static <T> T exec(String command, OutputParser<T> parser) throws Exception {
+		List<String> args = split(command);
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			T result = runner.run(args, parser);
+			failed = false;
+			return result;
+		} finally {
+			record(args, start, failed);
+		}
+	}
+
+	private static void record(List<String> command, long start, boolean failed) {
+		CommandMetrics.getInstance().record(command, System.nanoTime() - start, failed);
+	}
+
+	public static CommandRunner getRunner() {
+		return runner;
+	}
+
+	/**
+	 * Replaces the way commands are run, i.e. with {@link ReplayCommandRunner} for tests
+	 */
+	public static void setRunner(CommandRunner runner) {
+		ExecCommand.runner = runner;
+		defaultRunner = false;
+	}
+
+	/**
+	 * Makes default runner read output and run hedged attempts on the executor, e.g. virtual threads,
+	 * instead of its bounded pools. Runner is shared by the whole JVM. Runner set with
+	 * {@link #setRunner(CommandRunner)} is not changed
+	 */
+	public static synchronized void useExecutor(ExecutorService executor) {
+		if (!defaultRunner || executor == ExecCommand.executor) {
+			return;
+		}
+		ExecCommand.executor = executor;
+		runner = new HedgingCommandRunner(
+				new ProcessCommandRunner(defaultCharset(), ProcessCommandRunner.DEFAULT_TIMEOUT, executor),
+				ExecCommand::isReadOnly, executor);
+	}
+
+	/**
+	 * same as Runtime.exec(String) does
+	 */
+	private static List<String> split(String command) {
+		StringTokenizer tokenizer = new StringTokenizer(command);
+		List<String> result = new ArrayList<>();
+		while (tokenizer.hasMoreTokens()) {
+			result.add(tokenizer.nextToken());
+		}
+		return result;
+	}
+
+	/**
+	 * Commands which write something can't be hedged, i.e. reg export to the same file
+	 */
+	private static boolean isReadOnly(List<String> command) {
+		return !(command.size() > 1 && "reg".equalsIgnoreCase(command.get(0)) && "export".equalsIgnoreCase(command.get(1)));
+	}
 
+	/**
+	 * Mac OS X tools write UTF-8, on other systems native encoding of the console is used
+	 */
+	static Charset defaultCharset() {
+		if (SystemUtils.IS_OS_MAC) {
+			return StandardCharsets.UTF_8;
+		}
+		String nativeEncoding = System.getProperty("native.encoding");
+		if (nativeEncoding != null && Charset.isSupported(nativeEncoding)) {
+			return Charset.forName(nativeEncoding);
+		}
+		return Charset.defaultCharset();
 	}
 }
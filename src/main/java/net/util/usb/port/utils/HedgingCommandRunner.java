@@ -0,0 +1,160 @@
+package net.util.usb.port.utils;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Starts second attempt of the command when the first one runs longer than p95 of its
+ * previous runs (but not less than 50 ms, so fast commands are not started twice on small jitter),
+ * result of whichever finishes first is used and the other one is cancelled.
+ * Both attempts use the same parser at the same time, so it must be stateless or thread-safe.
+ * Helps when system_profiler or powershell hangs i.e. after sleep/resume.
+ */
+public class HedgingCommandRunner implements CommandRunner {
+	private static final Logger LOG = LoggerFactory.getLogger(HedgingCommandRunner.class);
+
+	/**
+	 * runs needed before p95 can be trusted
+	 */
+	private static final int MIN_SAMPLES = 10;
+
+	private static final int WINDOW = 64;
+
+	private static final int MAX_ATTEMPTS = 16;
+
+	/**
+	 * second process is not started earlier than this
+	 */
+	static final long MIN_HEDGE_DELAY = 50;
+
+	private static final ThreadPoolExecutor attempts = new ThreadPoolExecutor(0, MAX_ATTEMPTS, 30, TimeUnit.SECONDS,
+			new SynchronousQueue<>(), r -> {
+				Thread thread = new Thread(r, "usb-detector-hedge");
+				thread.setDaemon(true);
+				return thread;
+			});
+
+	private final CommandRunner delegate;
+
+	private final Predicate<List<String>> hedgeable;
+
+	private final ExecutorService executor;
+
+	private final Map<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+
+	/**
+	 * @param hedgeable commands which can be safely run twice at the same time
+	 */
+	public HedgingCommandRunner(CommandRunner delegate, Predicate<List<String>> hedgeable) {
+		this(delegate, hedgeable, attempts);
+	}
+
+	/**
+	 * @param executor where attempts are run, e.g. virtual threads
+	 */
+	public HedgingCommandRunner(CommandRunner delegate, Predicate<List<String>> hedgeable, ExecutorService executor) {
+		this.delegate = delegate;
+		this.hedgeable = hedgeable;
+		this.executor = executor;
+	}
+
+	public CommandRunner getDelegate() {
+		return delegate;
+	}
+
+	@Override
+	public Charset getCharset() {
+		return delegate.getCharset();
+	}
+
+	@Override
+	public <T> T run(List<String> command, OutputParser<T> parser) throws Exception {
+		String key = String.join(" ", command);
+		LatencyWindow window = latencies.computeIfAbsent(key, k -> new LatencyWindow());
+		long start = System.nanoTime();
+
+		long p95 = window.p95();
+		T result = p95 < 0 || !hedgeable.test(command) ? delegate.run(command, parser)
+				: hedged(command, parser, Math.max(p95, MIN_HEDGE_DELAY));
+
+		window.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		return result;
+	}
+
+	private <T> T hedged(List<String> command, OutputParser<T> parser, long delay) throws Exception {
+		ExecutorCompletionService<T> completion = new ExecutorCompletionService<>(executor);
+		List<Future<T>> futures = new ArrayList<>(2);
+		try {
+			try {
+				futures.add(completion.submit(() -> delegate.run(command, parser)));
+			} catch (RejectedExecutionException e) {
+				return delegate.run(command, parser);
+			}
+
+			Future<T> done = completion.poll(delay, TimeUnit.MILLISECONDS);
+			if (done == null) {
+				try {
+					futures.add(completion.submit(() -> delegate.run(command, parser)));
+					LOG.debug("Command is slower than " + delay + " ms, hedging: " + String.join(" ", command));
+				} catch (RejectedExecutionException e) {
+					//no free threads, wait for the first attempt
+				}
+			}
+
+			Exception failure = null;
+			for (int pending = futures.size(); pending > 0; pending--) {
+				if (done == null) {
+					done = completion.take();
+				}
+				try {
+					return done.get();
+				} catch (ExecutionException e) {
+					failure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+					done = null;
+				}
+			}
+			throw failure;
+		} finally {
+			//interrupted attempt kills its process tree
+			futures.forEach(f -> f.cancel(true));
+		}
+	}
+
+	private static class LatencyWindow {
+		private final long[] samples = new long[WINDOW];
+		private int count;
+
+		synchronized void record(long millis) {
+			samples[count++ % WINDOW] = millis;
+		}
+
+		/**
+		 * @return p95 of last runs or -1 if there are not enough samples
+		 */
+		synchronized long p95() {
+			int size = Math.min(count, WINDOW);
+			if (size < MIN_SAMPLES) {
+				return -1;
+			}
+			long[] sorted = Arrays.copyOf(samples, size);
+			Arrays.sort(sorted);
+			return sorted[(int) Math.ceil(size * 0.95) - 1];
+		}
+	}
+}
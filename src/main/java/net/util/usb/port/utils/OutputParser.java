@@ -0,0 +1,16 @@
+package net.util.usb.port.utils;
+
+import java.io.InputStream;
+
+/**
+ * Reads stdout of the command while it is running. One parser may read outputs of several attempts
+ * of the command concurrently (see {@link HedgingCommandRunner}), so it must be stateless or thread-safe
+ */
+@FunctionalInterface
+public interface OutputParser<T> {
+
+	/**
+	 * @param output stdout of the command. Process is destroyed if parser returns before end of the stream
+	 */
+	T parse(InputStream output) throws Exception;
+}
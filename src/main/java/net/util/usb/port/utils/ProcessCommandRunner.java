@@ -0,0 +1,181 @@
+package net.util.usb.port.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Starts commands with {@link ProcessBuilder}. Stdout is read by shared bounded pool while
+ * calling thread waits for it with timeout, stderr is drained by another pool (or discarded
+ * when pool is busy), so chatty process can't block on full pipe.
+ * <p>
+ * On timeout or interruption of the calling thread the whole process tree is killed.
+ */
+public class ProcessCommandRunner implements CommandRunner {
+	private static final Logger LOG = LoggerFactory.getLogger(ProcessCommandRunner.class);
+
+	private static final int MAX_DRAINERS = 4;
+
+	private static final int MAX_READERS = 8;
+
+	public static final long DEFAULT_TIMEOUT = 30_000;
+
+	/**
+	 * how much of stderr is kept for logging
+	 */
+	private static final int MAX_STDERR = 4096;
+
+	private static final Semaphore drainers = new Semaphore(MAX_DRAINERS);
+
+	private static final ThreadPoolExecutor drainerPool = new ThreadPoolExecutor(0, MAX_DRAINERS, 30, TimeUnit.SECONDS,
+			new SynchronousQueue<>(), r -> {
+				Thread thread = new Thread(r, "usb-detector-stderr");
+				thread.setDaemon(true);
+				return thread;
+			});
+
+	private static final ThreadPoolExecutor readerPool = new ThreadPoolExecutor(MAX_READERS, MAX_READERS, 30, TimeUnit.SECONDS,
+			new LinkedBlockingQueue<>(), r -> {
+				Thread thread = new Thread(r, "usb-detector-stdout");
+				thread.setDaemon(true);
+				return thread;
+			});
+	static {
+		readerPool.allowCoreThreadTimeOut(true);
+	}
+
+	private final Charset charset;
+
+	private final ExecutorService readers;
+
+	private volatile long timeoutMillis;
+
+	public ProcessCommandRunner(Charset charset) {
+		this(charset, DEFAULT_TIMEOUT);
+	}
+
+	/**
+	 * @param timeoutMillis max time of one command, process tree is killed after it
+	 */
+	public ProcessCommandRunner(Charset charset, long timeoutMillis) {
+		this(charset, timeoutMillis, readerPool);
+	}
+
+	/**
+	 * @param readers executor where output is read and parsed, e.g. virtual threads
+	 */
+	public ProcessCommandRunner(Charset charset, long timeoutMillis, ExecutorService readers) {
+		this.charset = charset;
+		this.timeoutMillis = timeoutMillis;
+		this.readers = readers;
+	}
+
+	public long getTimeout() {
+		return timeoutMillis;
+	}
+
+	public void setTimeout(long timeoutMillis) {
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	@Override
+	public Charset getCharset() {
+		return charset;
+	}
+
+	@Override
+	public <T> T run(List<String> command, OutputParser<T> parser) throws Exception {
+		ProcessBuilder builder = new ProcessBuilder(command);
+		boolean drain = drainers.tryAcquire();
+		if (!drain) {
+			builder.redirectError(ProcessBuilder.Redirect.DISCARD);
+		}
+
+		Process process;
+		try {
+			process = builder.start();
+		} catch (IOException e) {
+			if (drain) {
+				drainers.release();
+			}
+			throw e;
+		}
+
+		if (drain) {
+			drainerPool.execute(() -> {
+				try {
+					drainStderr(command, process.getErrorStream());
+				} finally {
+					drainers.release();
+				}
+			});
+		}
+
+		long timeout = timeoutMillis;
+		Future<T> reading = readers.submit(() -> {
+			try (InputStream output = process.getInputStream()) {
+				return parser.parse(output);
+			}
+		});
+
+		try {
+			T result = reading.get(timeout, TimeUnit.MILLISECONDS);
+			//output is closed, process should exit right now
+			if (!process.waitFor(timeout, TimeUnit.MILLISECONDS)) {
+				throw new CommandTimeoutException(command, timeout);
+			}
+			return result;
+		} catch (TimeoutException e) {
+			throw new CommandTimeoutException(command, timeout);
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+		} finally {
+			//timeout, cancellation or parser has finished before end of output
+			if (process.isAlive()) {
+				kill(process);
+			}
+			reading.cancel(true);
+		}
+	}
+
+	/**
+	 * Kills process with all its children, i.e. shell which started the tool
+	 */
+	static void kill(Process process) {
+		process.descendants().forEach(ProcessHandle::destroyForcibly);
+		process.destroyForcibly();
+	}
+
+	private void drainStderr(List<String> command, InputStream stderr) {
+		byte[] buffer = new byte[1024];
+		byte[] kept = new byte[MAX_STDERR];
+		int keptLength = 0;
+		try (InputStream is = stderr) {
+			int n;
+			while ((n = is.read(buffer)) != -1) {
+				int copy = Math.min(n, kept.length - keptLength);
+				System.arraycopy(buffer, 0, kept, keptLength, copy);
+				keptLength += copy;
+			}
+		} catch (IOException e) {
+			//process has been destroyed
+		}
+
+		if (keptLength > 0 && LOG.isDebugEnabled()) {
+			LOG.debug(String.join(" ", command) + " stderr: " + new String(kept, 0, keptLength, charset));
+		}
+	}
+}
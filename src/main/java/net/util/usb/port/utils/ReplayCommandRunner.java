@@ -0,0 +1,70 @@
+package net.util.usb.port.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Returns recorded outputs instead of running commands.
+ * Commands are matched by program and arguments joined with spaces.
+ */
+public class ReplayCommandRunner implements CommandRunner {
+
+	private final Map<String, Path> files = new ConcurrentHashMap<>();
+
+	private final Map<String, byte[]> outputs = new ConcurrentHashMap<>();
+
+	private final Charset charset;
+
+	public ReplayCommandRunner() {
+		this(StandardCharsets.UTF_8);
+	}
+
+	public ReplayCommandRunner(Charset charset) {
+		this.charset = charset;
+	}
+
+	public ReplayCommandRunner record(String command, String output) {
+		outputs.put(command, output.getBytes(charset));
+		return this;
+	}
+
+	/**
+	 * @param output file with captured stdout of the command
+	 */
+	public ReplayCommandRunner record(String command, Path output) {
+		files.put(command, output);
+		return this;
+	}
+
+	@Override
+	public Charset getCharset() {
+		return charset;
+	}
+
+	@Override
+	public <T> T run(List<String> command, OutputParser<T> parser) throws Exception {
+		String key = String.join(" ", command);
+
+		byte[] output = outputs.get(key);
+		if (output != null) {
+			return parser.parse(new ByteArrayInputStream(output));
+		}
+
+		Path file = files.get(key);
+		if (file != null) {
+			try (InputStream is = Files.newInputStream(file)) {
+				return parser.parse(is);
+			}
+		}
+
+		throw new IOException("No recorded output for: " + key);
+	}
+}
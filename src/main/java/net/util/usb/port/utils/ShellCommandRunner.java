@@ -0,0 +1,394 @@
+package net.util.usb.port.utils;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs commands in one long-lived shell (sh, cmd or PowerShell) instead of starting a process for each of them.
+ * Every command is followed by a marker line with its exit code, output between markers belongs to the command.
+ * Commands of several threads are written one after another without waiting for previous output,
+ * reader thread of the session hands output to callers in the same order.
+ * <p>
+ * On timeout or interruption the shell is killed with all its children, next command starts new shell.
+ * Commands which were queued in killed shell are run once more in the new one.
+ *
+ * @see ExecCommand#setRunner(CommandRunner)
+ */
+public class ShellCommandRunner implements CommandRunner, Closeable {
+	private static final Logger LOG = LoggerFactory.getLogger(ShellCommandRunner.class);
+
+	private final Shell shell;
+
+	private final Charset charset;
+
+	private volatile long timeoutMillis;
+
+	private Session session;
+
+	private boolean closed;
+
+	public ShellCommandRunner(Shell shell, Charset charset) {
+		this(shell, charset, ProcessCommandRunner.DEFAULT_TIMEOUT);
+	}
+
+	/**
+	 * @param timeoutMillis max time of one command, shell is killed after it
+	 */
+	public ShellCommandRunner(Shell shell, Charset charset, long timeoutMillis) {
+		this.shell = shell;
+		this.charset = charset;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	/**
+	 * @return cmd on Windows, sh on other systems
+	 */
+	public static ShellCommandRunner forCurrentOS() {
+		return new ShellCommandRunner(SystemUtils.IS_OS_WINDOWS ? Shell.CMD : Shell.SH, ExecCommand.defaultCharset());
+	}
+
+	public long getTimeout() {
+		return timeoutMillis;
+	}
+
+	public void setTimeout(long timeoutMillis) {
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	@Override
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * Output is collected first and parsed after the command has finished
+	 */
+	@Override
+	public <T> T run(List<String> command, OutputParser<T> parser) throws Exception {
+		byte[] output;
+		try {
+			output = execute(command);
+		} catch (SessionClosedException e) {
+			LOG.debug("Shell has been closed before " + String.join(" ", command) + ", running it again");
+			output = execute(command);
+		}
+		return parser.parse(new ByteArrayInputStream(output));
+	}
+
+	private byte[] execute(List<String> command) throws Exception {
+		long timeout = timeoutMillis;
+		Session current = session();
+		Frame frame = current.submit(command);
+		try {
+			byte[] output = frame.output.get(timeout, TimeUnit.MILLISECONDS);
+			if (frame.exitCode != 0 && LOG.isDebugEnabled()) {
+				LOG.debug(String.join(" ", command) + " has exited with code " + frame.exitCode);
+			}
+			return output;
+		} catch (TimeoutException e) {
+			current.kill();
+			throw new CommandTimeoutException(command, timeout);
+		} catch (InterruptedException e) {
+			current.kill();
+			throw e;
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+		}
+	}
+
+	/**
+	 * @return running session, new one is started if previous has died
+	 */
+	private synchronized Session session() throws Exception {
+		if (closed) {
+			throw new IllegalStateException("Shell runner is closed");
+		}
+		if (session != null && session.isAlive()) {
+			return session;
+		}
+
+		Session started = Session.start(shell, charset);
+		//banner of the shell is skipped with output of empty command
+		Frame hello = started.submit(null);
+		try {
+			hello.output.get(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException | InterruptedException | ExecutionException e) {
+			started.kill();
+			throw e instanceof TimeoutException ? new IOException("Shell has not started: " + shell) : e;
+		}
+		LOG.debug("Shell has been started: " + shell);
+		session = started;
+		return started;
+	}
+
+	/**
+	 * Kills the shell, runner can't be used after that
+	 */
+	@Override
+	public synchronized void close() {
+		closed = true;
+		if (session != null) {
+			session.kill();
+			session = null;
+		}
+	}
+
+	/**
+	 * Shell, how commands are quoted for it and how marker line is printed after them
+	 */
+	public enum Shell {
+		SH(Arrays.asList("/bin/sh"), "\n") {
+			private final Pattern plain = Pattern.compile("[A-Za-z0-9_./:=,+@%-]+");
+
+			@Override
+			String line(List<String> command, String marker) {
+				String done = "printf '\\n%s %d\\n' '" + marker + "' $?";
+				if (command == null) {
+					return done;
+				}
+				//command must not read commands of the shell
+				return command.stream().map(this::quote).collect(Collectors.joining(" ")) + " </dev/null; " + done;
+			}
+
+			private String quote(String arg) {
+				return plain.matcher(arg).matches() ? arg : "'" + arg.replace("'", "'\\''") + "'";
+			}
+		},
+
+		CMD(Arrays.asList("cmd", "/Q", "/D", "/K", "@echo off"), "\r\n") {
+			@Override
+			String line(List<String> command, String marker) {
+				//errorlevel is expanded by call when command has finished
+				String done = "echo. & call echo " + marker + " %^errorlevel%";
+				if (command == null) {
+					return done;
+				}
+				return command.stream().map(this::quote).collect(Collectors.joining(" ")) + " < NUL & " + done;
+			}
+
+			private String quote(String arg) {
+				if (arg.length() > 1 && arg.startsWith("\"") && arg.endsWith("\"")) {
+					return arg;
+				}
+				return arg.isEmpty() || arg.chars().anyMatch(c -> " &|<>^()".indexOf(c) >= 0) ? "\"" + arg + "\"" : arg;
+			}
+		},
+
+		POWERSHELL(Arrays.asList("powershell", "-NoProfile", "-NonInteractive", "-NoLogo", "-Command", "-"), "\n") {
+			@Override
+			String line(List<String> command, String marker) {
+				String done = "Write-Output (\"`n\" + '" + marker + " ' + [int]$LASTEXITCODE)";
+				if (command == null) {
+					return done;
+				}
+				return "$null | & " + command.stream().map(this::quote).collect(Collectors.joining(" ")) + "; " + done;
+			}
+
+			private String quote(String arg) {
+				String value = arg.length() > 1 && arg.startsWith("\"") && arg.endsWith("\"") ? arg.substring(1, arg.length() - 1) : arg;
+				return "'" + value.replace("'", "''") + "'";
+			}
+		};
+
+		private final List<String> command;
+
+		private final byte[] lineBreak;
+
+		Shell(List<String> command, String lineBreak) {
+			this.command = command;
+			this.lineBreak = lineBreak.getBytes(StandardCharsets.US_ASCII);
+		}
+
+		/**
+		 * @param command program and arguments, null for empty command
+		 * @return line which runs the command and then prints line break and marker with exit code
+		 */
+		abstract String line(List<String> command, String marker);
+	}
+
+	/**
+	 * Output of one command
+	 */
+	private static class Frame {
+		private final byte[] marker;
+		private final CompletableFuture<byte[]> output = new CompletableFuture<>();
+		private volatile int exitCode;
+
+		Frame(String marker) {
+			this.marker = marker.getBytes(StandardCharsets.US_ASCII);
+		}
+	}
+
+	private static class Session {
+		private final Shell shell;
+		private final Charset charset;
+		private final Process process;
+		private final OutputStream stdin;
+		private final InputStream stdout;
+		private final String prefix = "__usb_detector_" + Long.toHexString(ThreadLocalRandom.current().nextLong()) + "_";
+		private final LinkedBlockingQueue<Frame> frames = new LinkedBlockingQueue<>();
+		private long written;
+		private volatile boolean dead;
+
+		private byte[] buffer = new byte[8192];
+		private int length;
+
+		private Session(Shell shell, Charset charset, Process process) {
+			this.shell = shell;
+			this.charset = charset;
+			this.process = process;
+			this.stdin = process.getOutputStream();
+			this.stdout = new BufferedInputStream(process.getInputStream(), 8192);
+		}
+
+		static Session start(Shell shell, Charset charset) throws IOException {
+			Process process = new ProcessBuilder(shell.command).redirectError(ProcessBuilder.Redirect.DISCARD).start();
+			Session session = new Session(shell, charset, process);
+			Thread reader = new Thread(session::read, "usb-detector-shell");
+			reader.setDaemon(true);
+			reader.start();
+			return session;
+		}
+
+		boolean isAlive() {
+			return !dead && process.isAlive();
+		}
+
+		/**
+		 * Writes command to the shell, its output is read by reader thread
+		 *
+		 * @param command program and arguments, null for empty command
+		 */
+		synchronized Frame submit(List<String> command) throws IOException {
+			if (!isAlive()) {
+				throw new SessionClosedException();
+			}
+			String marker = prefix + written++;
+			Frame frame = new Frame(marker);
+			frames.add(frame);
+			try {
+				stdin.write((shell.line(command, marker) + new String(shell.lineBreak, StandardCharsets.US_ASCII)).getBytes(charset));
+				stdin.flush();
+			} catch (IOException e) {
+				kill();
+				throw new SessionClosedException();
+			}
+			return frame;
+		}
+
+		void kill() {
+			dead = true;
+			ProcessCommandRunner.kill(process);
+		}
+
+		/**
+		 * Reads frames in order of commands until shell dies
+		 */
+		private void read() {
+			try {
+				while (true) {
+					readFrame(frames.take());
+				}
+			} catch (IOException | InterruptedException e) {
+				//shell has been killed or has exited
+			} finally {
+				dead = true;
+				ProcessCommandRunner.kill(process);
+				Frame frame;
+				while ((frame = frames.poll()) != null) {
+					frame.output.completeExceptionally(new SessionClosedException());
+				}
+			}
+		}
+
+		private void readFrame(Frame frame) throws IOException {
+			byte[] marker = frame.marker;
+			byte last = marker[marker.length - 1];
+			length = 0;
+			int b;
+			while ((b = stdout.read()) != -1) {
+				if (length == buffer.length) {
+					buffer = Arrays.copyOf(buffer, buffer.length * 2);
+				}
+				buffer[length++] = (byte) b;
+
+				//marker starts a line
+				int start = length - marker.length;
+				if (b == last && start >= 0 && (start == 0 || buffer[start - 1] == '\n') && endsWith(length, marker)) {
+					frame.exitCode = readExitCode();
+					//line break before the marker is printed by the shell, not by the command
+					int end = endsWith(start, shell.lineBreak) ? start - shell.lineBreak.length : start;
+					frame.output.complete(Arrays.copyOf(buffer, end));
+					if (buffer.length > 64 * 1024) {
+						buffer = new byte[8192];
+					}
+					return;
+				}
+			}
+			frame.output.completeExceptionally(new SessionClosedException());
+			throw new IOException("Shell has exited");
+		}
+
+		private boolean endsWith(int end, byte[] suffix) {
+			int start = end - suffix.length;
+			if (start < 0) {
+				return false;
+			}
+			for (int i = 0; i < suffix.length; i++) {
+				if (buffer[start + i] != suffix[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * @return exit code which follows the marker, rest of the line is consumed
+		 */
+		private int readExitCode() throws IOException {
+			StringBuilder code = new StringBuilder();
+			int b;
+			while ((b = stdout.read()) != -1 && b != '\n') {
+				if (b != '\r' && b != ' ') {
+					code.append((char) b);
+				}
+			}
+			try {
+				return Integer.parseInt(code.toString());
+			} catch (NumberFormatException e) {
+				return -1;
+			}
+		}
+	}
+
+	/**
+	 * Shell has died before output of the command has been read, command can be run again
+	 */
+	private static class SessionClosedException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		SessionClosedException() {
+			super("Shell has been closed");
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package net.util.usb.port.utils;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Keeps last snapshot of expensive system output (system_profiler, drives table, ...).
+ * Snapshot is taken again only when set of devices has been changed or snapshot has been invalidated.
+ * Concurrent callers wait for the same refresh instead of running their own.
+ */
+public class SnapshotCache<T> {
+
+	private final Supplier<List<String>> deviceSet;
+
+	private final SnapshotLoader<T> loader;
+
+	private List<String> devices;
+
+	private T snapshot;
+
+	/**
+	 * {@link System#nanoTime()} when current snapshot has started loading
+	 */
+	private long loadStarted;
+
+	private CompletableFuture<T> refresh;
+
+	/**
+	 * @param deviceSet current set of devices, i.e. entries of /Volumes
+	 */
+	public SnapshotCache(Supplier<List<String>> deviceSet, SnapshotLoader<T> loader) {
+		this.deviceSet = deviceSet;
+		this.loader = loader;
+	}
+
+	public T get() throws Exception {
+		List<String> current = deviceSet.get();
+
+		CompletableFuture<T> future;
+		boolean owner = false;
+		synchronized (this) {
+			if (snapshot != null && current.equals(devices)) {
+				return snapshot;
+			}
+
+			if (refresh == null) {
+				refresh = new CompletableFuture<>();
+				owner = true;
+			}
+			future = refresh;
+		}
+
+		if (owner) {
+			try {
+				long started = System.nanoTime();
+				T loaded = loader.load();
+				synchronized (this) {
+					snapshot = loaded;
+					loadStarted = started;
+					devices = current;
+					refresh = null;
+				}
+				future.complete(loaded);
+			} catch (Exception e) {
+				synchronized (this) {
+					refresh = null;
+				}
+				future.completeExceptionally(e);
+				throw e;
+			}
+		}
+
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+		}
+	}
+
+	/**
+	 * Drops snapshot in case if it is still current one, i.e. device has not been found in it
+	 */
+	public synchronized void invalidate(T outdated) {
+		if (snapshot == outdated) {
+			snapshot = null;
+		}
+	}
+
+	/**
+	 * @param nanos {@link System#nanoTime()}
+	 * @return true if snapshot is current one and it has been taken after the time, so a device missing in it
+	 *         is not just late
+	 */
+	public synchronized boolean isTakenSince(T taken, long nanos) {
+		return snapshot == taken && loadStarted - nanos >= 0;
+	}
+
+	@FunctionalInterface
+	public interface SnapshotLoader<T> {
+		T load() throws Exception;
+	}
+}
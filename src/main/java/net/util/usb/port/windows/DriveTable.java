@@ -0,0 +1,162 @@
+package net.util.usb.port.windows;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Joined logical disk -> partition -> physical drive -> PNPDeviceID table.
+ * Parsed from CSV with header "Letter","Drive","PNPDeviceID".
+ * Output of PowerShell in UTF-8 can start with BOM, it is skipped.
+ */
+class DriveTable {
+
+	private final Map<String, Drive> drives;
+
+	private DriveTable(Map<String, Drive> drives) {
+		this.drives = drives;
+	}
+
+	/**
+	 * @param letter disk letter, i.e. E:
+	 * @return drive or null if letter is not on physical drive
+	 */
+	Drive get(String letter) {
+		return drives.get(letter.toUpperCase());
+	}
+
+	Map<String, Drive> getDrives() {
+		return drives;
+	}
+
+	static DriveTable parse(Reader csv) throws IOException {
+		Map<String, Drive> drives = new HashMap<>();
+		BufferedReader reader = new BufferedReader(csv);
+		String[] fields = new String[4];
+
+		int letterCol = -1, driveCol = -1, pnpCol = -1, sizeCol = -1;
+		String line;
+		while ((line = reader.readLine()) != null) {
+			if (letterCol < 0 && !line.isEmpty() && line.charAt(0) == '\uFEFF') {
+				line = line.substring(1);
+			}
+			if (line.isEmpty() || line.charAt(0) == '#') {
+				continue;
+			}
+
+			int count = splitCsv(line, fields);
+			if (letterCol < 0) {
+				//"Letter","Drive","PNPDeviceID","Size"
+				for (int i = 0; i < count; i++) {
+					if ("Letter".equals(fields[i])) {
+						letterCol = i;
+					} else if ("Drive".equals(fields[i])) {
+						driveCol = i;
+					} else if ("PNPDeviceID".equals(fields[i])) {
+						pnpCol = i;
+					} else if ("Size".equals(fields[i])) {
+						sizeCol = i;
+					}
+				}
+				if (letterCol < 0 || driveCol < 0 || pnpCol < 0) {
+					throw new IOException("Unexpected header: " + line);
+				}
+				continue;
+			}
+
+			if (count > Math.max(letterCol, Math.max(driveCol, pnpCol))) {
+				//"E:","\\.\PHYSICALDRIVE2","USBSTOR\DISK&VEN_GENERIC&PROD_FLASH_DISK&REV_8.07\A2F4B0E8&0","15728640000"
+				long size = -1;
+				if (sizeCol >= 0 && sizeCol < count && !fields[sizeCol].isEmpty()) {
+					try {
+						size = Long.parseLong(fields[sizeCol]);
+					} catch (NumberFormatException e) {
+						//size stays unknown
+					}
+				}
+				drives.putIfAbsent(fields[letterCol].toUpperCase(), new Drive(fields[driveCol], fields[pnpCol], size));
+			}
+		}
+
+		return new DriveTable(Collections.unmodifiableMap(drives));
+	}
+
+	/**
+	 * Splits line with up to fields.length quoted or plain values
+	 * @return count of values
+	 */
+	static int splitCsv(String line, String[] fields) {
+		int count = 0;
+		int pos = 0;
+		int length = line.length();
+		while (pos <= length && count < fields.length) {
+			if (pos < length && line.charAt(pos) == '"') {
+				StringBuilder sb = null;
+				int start = ++pos;
+				while (pos < length) {
+					char c = line.charAt(pos);
+					if (c == '"') {
+						if (pos + 1 < length && line.charAt(pos + 1) == '"') {
+							//escaped quote, rare
+							if (sb == null) {
+								sb = new StringBuilder();
+							}
+							sb.append(line, start, pos + 1);
+							start = pos += 2;
+							continue;
+						}
+						break;
+					}
+					pos++;
+				}
+				fields[count++] = sb == null ? line.substring(start, pos) : sb.append(line, start, pos).toString();
+				pos = line.indexOf(',', pos);
+			} else {
+				int end = line.indexOf(',', pos);
+				fields[count++] = line.substring(pos, end < 0 ? length : end);
+				pos = end;
+			}
+
+			if (pos < 0) {
+				break;
+			}
+			pos++;
+		}
+		return count;
+	}
+
+	static class Drive {
+		private final String physicalDrive;
+		private final String pnpDeviceId;
+		private final long size;
+
+		Drive(String physicalDrive, String pnpDeviceId, long size) {
+			this.physicalDrive = physicalDrive;
+			this.pnpDeviceId = pnpDeviceId;
+			this.size = size;
+		}
+
+		String getPhysicalDrive() {
+			return physicalDrive;
+		}
+
+		String getPnpDeviceId() {
+			return pnpDeviceId;
+		}
+
+		/**
+		 * @return size of the physical drive in bytes or -1 if unknown
+		 */
+		long getSize() {
+			return size;
+		}
+
+		@Override
+		public String toString() {
+			return "Drive [physicalDrive=" + physicalDrive + ", pnpDeviceId=" + pnpDeviceId + ", size=" + size + "]";
+		}
+	}
+}
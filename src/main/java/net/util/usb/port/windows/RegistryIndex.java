@@ -0,0 +1,177 @@
+package net.util.usb.port.windows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.util.usb.port.DeviceInfo;
+
+/**
+ * ContainerID -> LocationInformation index built from one "reg export" of Enum\USB.
+ * Vendor, product and serial number are taken from the name of the key which has LocationInformation.
+ * Export file is UTF-16LE, it is read to heap (a few hundred KB) and viewed as chars without decoding.
+ * File is not mapped: mapped file can't be deleted on Windows until the mapping is collected.
+ */
+class RegistryIndex {
+
+	private static final String CONTAINER_ID = "\"ContainerID\"=\"";
+	private static final String LOCATION_INFORMATION = "\"LocationInformation\"=\"";
+
+	private static final String VID = "VID_";
+	private static final String PID = "PID_";
+
+	private final Map<String, DeviceInfo> deviceByContainer;
+
+	private RegistryIndex(Map<String, DeviceInfo> deviceByContainer) {
+		this.deviceByContainer = deviceByContainer;
+	}
+
+	/**
+	 * @return LocationInformation i.e. Port_#0004.Hub_#0006 or null if container is unknown
+	 */
+	String findLocation(String containerId) {
+		DeviceInfo device = findDevice(containerId);
+		return device == null ? null : device.getPort();
+	}
+
+	/**
+	 * @return LocationInformation as port with vendor, product and serial number or null if container is unknown
+	 */
+	DeviceInfo findDevice(String containerId) {
+		return deviceByContainer.get(containerId.toLowerCase());
+	}
+
+	Map<String, DeviceInfo> getDevices() {
+		return deviceByContainer;
+	}
+
+	static RegistryIndex parse(Path regFile) throws IOException {
+		byte[] bytes = Files.readAllBytes(regFile);
+		if (bytes.length == 0) {
+			return new RegistryIndex(Collections.emptyMap());
+		}
+		CharBuffer chars = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asCharBuffer();
+		return parse(chars);
+	}
+
+	static RegistryIndex parse(CharSequence reg) {
+		Map<String, DeviceInfo> index = new HashMap<>();
+		String containerId = null;
+		String location = null;
+		int keyStart = 0;
+		int keyEnd = 0;
+
+		int length = reg.length();
+		int pos = length > 0 && reg.charAt(0) == '\uFEFF' ? 1 : 0;
+		while (pos < length) {
+			int end = pos;
+			while (end < length && reg.charAt(end) != '\n' && reg.charAt(end) != '\r') {
+				end++;
+			}
+
+			if (end > pos) {
+				char first = reg.charAt(pos);
+				if (first == '[') {
+					//[HKEY_LOCAL_MACHINE\SYSTEM\CurrentControlSet\Enum\USB\VID_0781&PID_5567\4C530001]
+					put(index, containerId, location, reg, keyStart, keyEnd);
+					containerId = null;
+					location = null;
+					keyStart = pos + 1;
+					keyEnd = end > pos && reg.charAt(end - 1) == ']' ? end - 1 : end;
+				} else if (first == '"') {
+					if (startsWith(reg, pos, end, CONTAINER_ID)) {
+						//"ContainerID"="{5e4f3c2a-...}"
+						containerId = stringValue(reg, pos + CONTAINER_ID.length(), end);
+					} else if (startsWith(reg, pos, end, LOCATION_INFORMATION)) {
+						//"LocationInformation"="Port_#0004.Hub_#0006"
+						location = stringValue(reg, pos + LOCATION_INFORMATION.length(), end);
+					}
+				}
+			}
+
+			pos = end + 1;
+		}
+		put(index, containerId, location, reg, keyStart, keyEnd);
+
+		return new RegistryIndex(Collections.unmodifiableMap(index));
+	}
+
+	private static void put(Map<String, DeviceInfo> index, String containerId, String location, CharSequence reg,
+			int keyStart, int keyEnd) {
+		if (containerId != null && location != null) {
+			String key = reg.subSequence(keyStart, keyEnd).toString();
+			index.putIfAbsent(containerId.toLowerCase(), device(key, location.trim()));
+		}
+	}
+
+	/**
+	 * @param key i.e. HKEY_LOCAL_MACHINE\SYSTEM\CurrentControlSet\Enum\USB\VID_0781&amp;PID_5567\4C530001
+	 */
+	static DeviceInfo device(String key, String location) {
+		int last = key.lastIndexOf('\\');
+		int previous = last > 0 ? key.lastIndexOf('\\', last - 1) : -1;
+		if (last < 0 || previous < 0) {
+			return new DeviceInfo(location);
+		}
+
+		String ids = key.substring(previous + 1, last).toUpperCase();
+		String instance = key.substring(last + 1);
+		int vid = ids.indexOf(VID);
+		int pid = ids.indexOf(PID);
+		return new DeviceInfo(location,
+				vid < 0 ? null : DeviceInfo.normalizeId(ids.substring(vid + VID.length())),
+				pid < 0 ? null : DeviceInfo.normalizeId(ids.substring(pid + PID.length())),
+				//devices without serial number get generated instance id, i.e. 5&2a1b3c4d&0&1
+				instance.isEmpty() || instance.indexOf('&') >= 0 ? null : instance,
+				-1, null);
+	}
+
+	private static boolean startsWith(CharSequence reg, int pos, int end, String prefix) {
+		if (end - pos < prefix.length()) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length(); i++) {
+			if (reg.charAt(pos + i) != prefix.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reads quoted value, \\ and \" are unescaped
+	 */
+	private static String stringValue(CharSequence reg, int pos, int end) {
+		StringBuilder sb = new StringBuilder(end - pos);
+		for (int i = pos; i < end; i++) {
+			char c = reg.charAt(i);
+			if (c == '\\' && i + 1 < end) {
+				sb.append(reg.charAt(++i));
+			} else if (c == '"') {
+				break;
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Exports registry location to temporary file and builds index from it
+	 */
+	static RegistryIndex export(String location) throws IOException {
+		Path regFile = Files.createTempFile("usb-detector", ".reg");
+		try {
+			WindowsReqistry.export(location, regFile);
+			return parse(regFile);
+		} finally {
+			Files.deleteIfExists(regFile);
+		}
+	}
+}
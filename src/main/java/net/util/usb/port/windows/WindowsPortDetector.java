@@ -1,8 +1,16 @@
 package net.util.usb.port.windows;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -10,138 +18,182 @@ import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import net.util.async.AsyncTask;
+import net.util.usb.port.DeviceInfo;
 import net.util.usb.port.PortDetectionException;
 import net.util.usb.port.PortDetector;
 import net.util.usb.port.utils.ExecCommand;
+import net.util.usb.port.utils.SnapshotCache;
 
 public class WindowsPortDetector extends PortDetector {
 	private static final Logger LOG = LoggerFactory.getLogger(WindowsPortDetector.class);
-	public static final String CMD_LOGICAL_DISKS = "wmic partition assoc /assocclass:Win32_LogicalDiskToPartition";
-	public static final String CMD_DRIVES = "wmic DiskDrive Assoc /assocclass:Win32_DiskDriveToDiskPartition";
 	public static final String REGISTRY_LOCATION = "HKEY_LOCAL_MACHINE\\SYSTEM\\CurrentControlSet\\Enum\\USB";
+	public static final String ENUM_LOCATION = "HKLM\\SYSTEM\\CurrentControlSet\\Enum\\";
+
+	/**
+	 * Joins logical disks to partitions, physical drives and PNPDeviceID in one process
+	 */
+	public static final String DRIVES_SCRIPT = "[Console]::OutputEncoding = [Text.Encoding]::UTF8; Get-CimInstance Win32_DiskDrive | ForEach-Object { $d = $_; "
+			+ "Get-CimAssociatedInstance -InputObject $d -ResultClassName Win32_DiskPartition | ForEach-Object { "
+			+ "Get-CimAssociatedInstance -InputObject $_ -ResultClassName Win32_LogicalDisk | ForEach-Object { "
+			+ "[pscustomobject]@{ Letter = $_.DeviceID; Drive = $d.DeviceID; PNPDeviceID = $d.PNPDeviceID; Size = $d.Size } } } } "
+			+ "| ConvertTo-Csv -NoTypeInformation";
+
+	/**
+	 * script is passed encoded, so no quoting issues with Runtime.exec
+	 */
+	public static final String CMD_DRIVES_TABLE = "powershell -NoProfile -NonInteractive -EncodedCommand "
+			+ Base64.getEncoder().encodeToString(DRIVES_SCRIPT.getBytes(StandardCharsets.UTF_16LE));
+
+	private final SnapshotCache<DriveTable> drivesCache = new SnapshotCache<>(WindowsPortDetector::listRoots, this::loadDrives);
+
+	private final SnapshotCache<RegistryIndex> registryCache = new SnapshotCache<>(WindowsPortDetector::listRoots,
+			() -> RegistryIndex.export(REGISTRY_LOCATION));
 
 	@Override
-	public synchronized String getDeviceUSBPortLocation(File file) throws PortDetectionException {
-		
-		AsyncTask<Map<String, String>> partitionTask = AsyncTask.of(() -> {
-			/*
-			\\WORKSHEEP\ROOT\CIMV2:Win32_DiskPartition.DeviceID="Disk #2, Partition #2" <-- this can be
-			\\WORKSHEEP\ROOT\CIMV2:Win32_DiskPartition.DeviceID="Disk #2, Partition #0"
-			\\WORKSHEEP\ROOT\CIMV2:Win32_LogicalDisk.DeviceID="E:".....
-			\\WORKSHEEP\ROOT\CIMV2:Win32_DiskPartition.DeviceID="Disk #3, Partition #0"
-			\\WORKSHEEP\ROOT\CIMV2:Win32_LogicalDisk.DeviceID="H:".....
-			\\WORKSHEEP\ROOT\CIMV2:Win32_DiskPartition.DeviceID="Disk #4, Partition #0"
-			\\WORKSHEEP\ROOT\CIMV2:Win32_LogicalDisk.DeviceID="F:".....
-			 */
-			String partitions = Arrays.stream(ExecCommand.exec(CMD_LOGICAL_DISKS).split("\n"))
-					.map(s -> s.trim())
-					//find only lines i.e. \\WORKSHEEP\ROOT\CIMV2:Win32_DiskPartition.DeviceID="Disk #2, Partition #0"
-					.filter(s -> s.startsWith("\\\\"))
-					.collect(Collectors.joining("\n"));
-			
-			Map<String, String> partitionMap = new HashMap<>();
-			String partition = null;
-			for (String line : Arrays.asList(partitions.split("\n"))) {
-				if (line.contains("Win32_DiskPartition.DeviceID")) {
-					//\\WORKSHEEP\ROOT\CIMV2:Win32_DiskPartition.DeviceID="Disk #2, Partition #0"
-					partition = line.split("Win32_DiskPartition.DeviceID=\"")[1];
-					//Disk #2, Partition #0"\n\r
-					partition = partition.substring(0, partition.indexOf('"'));
-				}
-				if (line.contains("Win32_LogicalDisk.DeviceID")) {
-					//\\WORKSHEEP\ROOT\CIMV2:Win32_LogicalDisk.DeviceID="E:"...
-					String disk = line.split("Win32_LogicalDisk.DeviceID=\"")[1];
-					//E:"...
-					disk = disk.substring(0, disk.indexOf('"'));
-					partitionMap.put(disk, partition);
+	public String getDeviceUSBPortLocation(File file) throws PortDetectionException {
+		return getDeviceInfo(file).getPort();
+	}
+
+	/**
+	 * Details come from the same drives table and registry export, volume serial number from the file store
+	 */
+	@Override
+	public DeviceInfo getDeviceInfo(File file) throws PortDetectionException {
+		return getDeviceInfos(Collections.singletonList(file)).get(file);
+	}
+
+	/**
+	 * All drives are found with one drives table, one registry query per kind of device (USBSTOR, SCSI)
+	 * and one registry export. Device is looked up once for all partitions of one physical drive.
+	 * Drive which is missing in table or index taken before the call may be just inserted, table or index is
+	 * taken again by next call. Drive which is missing in fresh ones, or has container without USB location,
+	 * is reported as {@link DeviceInfo#notUsb()}
+	 */
+	@Override
+	public Map<File, DeviceInfo> getDeviceInfos(Collection<File> files) throws PortDetectionException {
+		try {
+			long started = System.nanoTime();
+			Map<File, DeviceInfo> result = new LinkedHashMap<>();
+			Map<File, DriveTable.Drive> drives = new LinkedHashMap<>();
+			DriveTable table = drivesCache.get();
+			boolean freshTable = drivesCache.isTakenSince(table, started);
+			boolean missing = false;
+			for (File file : files) {
+				DriveTable.Drive drive = table.get(file.getAbsolutePath().substring(0, 2));
+				if (drive != null) {
+					result.put(file, new DeviceInfo(""));
+					drives.put(file, drive);
+				} else if (freshTable) {
+					//network drive, subst or drive without partitions
+					result.put(file, DeviceInfo.notUsb());
+				} else {
+					result.put(file, new DeviceInfo(""));
+					missing = true;
 				}
 			}
-			
-			return partitionMap;
-		});
-		
-		AsyncTask<Map<String, String>> diskDrivesTask = AsyncTask.of(() -> {
-			/*
-			\\WORKSHEEP\ROOT\CIMV2:Win32_DiskDrive.DeviceID="\\\\.\\PHYSICALDRIVE2" 
-			\\WORKSHEEP\ROOT\CIMV2:Win32_DiskPartition.DeviceID="Disk #2, Partition #0"....
-			 */
-			String diskDrives = Arrays.stream(ExecCommand.exec(CMD_DRIVES).split("\n"))
-					.map(s -> s.trim())
-					//find only lines i.e. \\WORKSHEEP\ROOT\CIMV2:Win32_DiskPartition.DeviceID="Disk #2, Partition #0"
-					.filter(s -> s.startsWith("\\\\"))
-					.collect(Collectors.joining("\n"));
-			
-			Map<String, String> diskDrivesMap = new HashMap<>();
-			String deviceId = null;
-			for (String line : Arrays.asList(diskDrives.split("\n"))) {
-				if (line.contains("Win32_DiskDrive.DeviceID")) {
-					//\\WORKSHEEP\ROOT\CIMV2:Win32_DiskDrive.DeviceID="\\\\.\\PHYSICALDRIVE2" 
-					deviceId = line.split("Win32_DiskDrive.DeviceID=\"")[1];
-					//\\\\.\\PHYSICALDRIVE2"\n\r
-					deviceId = deviceId.substring(0, deviceId.indexOf('"'));
+			if (missing) {
+				//just inserted drive may not be visible yet, next call should query it again
+				drivesCache.invalidate(table);
+			}
+			if (drives.isEmpty()) {
+				return result;
+			}
+
+			Map<String, String> containers = readContainerIds(drives.values());
+
+			RegistryIndex index = registryCache.get();
+			boolean freshIndex = registryCache.isTakenSince(index, started);
+			boolean unknown = false;
+			//partitions of one stick are on one physical drive, it is looked up once
+			Map<String, DeviceInfo> byDrive = new HashMap<>();
+			for (Map.Entry<File, DriveTable.Drive> entry : drives.entrySet()) {
+				DriveTable.Drive drive = entry.getValue();
+				DeviceInfo device = byDrive.get(drive.getPhysicalDrive());
+				if (device == null) {
+					String containerID = containers.get(drive.getPnpDeviceId().toLowerCase());
+					device = containerID == null ? DeviceInfo.notUsb() : index.findDevice(containerID);
+					if (device == null) {
+						if (!freshIndex) {
+							unknown = true;
+							continue;
+						}
+						device = DeviceInfo.notUsb();
+					} else if (device.getPort().isEmpty()) {
+						//container of internal devices is the computer itself, its root hub has no location
+						device = DeviceInfo.notUsb();
+					}
+					byDrive.put(drive.getPhysicalDrive(), device);
 				}
-				if (line.contains("Win32_DiskPartition.DeviceID")) {
-					//\\WORKSHEEP\ROOT\CIMV2:Win32_DiskPartition.DeviceID="Disk #2, Partition #0"....
-					String currentPartition = line.split("Win32_DiskPartition.DeviceID=\"")[1];
-					//Disk #2, Partition #0"....
-					currentPartition = currentPartition.substring(0, currentPartition.indexOf('"'));
-					diskDrivesMap.put(currentPartition, deviceId);
+				if (device.isNotUsb()) {
+					result.put(entry.getKey(), device);
+					continue;
 				}
+				result.put(entry.getKey(), new DeviceInfo(device.getPort(), device.getVendorId(), device.getProductId(),
+						device.getSerialNumber(), drive.getSize(), volumeSerialNumber(entry.getKey())));
 			}
-			
-			return diskDrivesMap;
-		});
-		
-		partitionTask.start();
-		diskDrivesTask.start();
-		
-		try {
-			partitionTask.join();
-			diskDrivesTask.join();
-			
-			String diskLetter = file.getAbsolutePath().substring(0, 2);
-			
-			String physicalDrive = diskDrivesTask.getResult().get(partitionTask.getResult().get(diskLetter));
-			
-			String pnpDeviceID = ExecCommand.exec("wmic DiskDrive where \"DeviceID='" + physicalDrive + "'\" get PNPDeviceID").split("\n")[1].trim();
-			
-			String containerID = WindowsReqistry.readRegistry("HKLM\\SYSTEM\\CurrentControlSet\\Enum\\" + pnpDeviceID, "ContainerID");
-			
-			if (containerID == null) {
-				return "";
+			if (unknown) {
+				//device may be enumerated after index has been built
+				registryCache.invalidate(index);
 			}
-			
-			return WindowsReqistry.readLocation(REGISTRY_LOCATION)
-					.stream()
-					//HKEY_LOCAL_MACHINE\SYSTEM\CurrentControlSet\Enum\USB\ROOT_HUB20
-					//HKEY_LOCAL_MACHINE\SYSTEM\CurrentControlSet\Enum\USB\VID_AAAA&PID_8816
-					//...
-					.flatMap(loc -> WindowsReqistry.readLocation(loc).stream())
-					//HKEY_LOCAL_MACHINE\SYSTEM\CurrentControlSet\Enum\USB\VID_AAAA&PID_8816\130818v01
-					.map(loc -> WindowsReqistry.readLocation(loc))
-					.filter(params -> params.stream().anyMatch(param -> param.contains(containerID)))
-					.flatMap(List::stream)
-					.filter(param -> param.contains("LocationInformation"))
-					.findFirst()
-					//    LocationInformation    REG_SZ    Port_#0004.Hub_#0006 \n
-					.map(param -> {
-						String[] parsed = param.split("\t|(    )");
-						return parsed[parsed.length - 1].trim();
-					})
-					.orElse("");
+			return result;
 		} catch (Exception e) {
 			throw new PortDetectionException(e);
 		}
 	}
 
+	/**
+	 * @return ContainerID by PNPDeviceID in lower case, i.e. usbstor\disk&amp;ven_sandisk&amp;...\4c530001&amp;0
+	 */
+	private static Map<String, String> readContainerIds(Collection<DriveTable.Drive> drives) {
+		Map<String, String> containers = new HashMap<>();
+		drives.stream()
+				.map(drive -> drive.getPnpDeviceId().substring(0, Math.max(drive.getPnpDeviceId().indexOf('\\'), 0)))
+				.filter(enumerator -> !enumerator.isEmpty())
+				.distinct()
+				.forEach(enumerator -> WindowsReqistry.readValues(ENUM_LOCATION + enumerator, "ContainerID")
+						.forEach((subkey, containerID) -> {
+							int start = subkey.indexOf("\\enum\\");
+							if (start >= 0) {
+								containers.put(subkey.substring(start + "\\enum\\".length()), containerID);
+							}
+						}));
+		return containers;
+	}
+
+	/**
+	 * @return volume serial number
+	 */
+	@Override
+	public String getVolumeId(File file) {
+		return volumeSerialNumber(file);
+	}
+
+	/**
+	 * @return serial number of the volume, i.e. 5E2A19C0, or null if it can't be read
+	 */
+	private static String volumeSerialNumber(File root) {
+		try {
+			Object vsn = Files.getFileStore(root.toPath()).getAttribute("volume:vsn");
+			return vsn instanceof Integer ? String.format("%08X", (Integer) vsn) : null;
+		} catch (IOException | UnsupportedOperationException e) {
+			LOG.debug("Can't read volume serial number of " + root, e);
+			return null;
+		}
+	}
+
+	private DriveTable loadDrives() throws Exception {
+		return ExecCommand.exec(CMD_DRIVES_TABLE, output -> DriveTable.parse(new InputStreamReader(output, StandardCharsets.UTF_8)));
+	}
+
+	private static List<String> listRoots() {
+		return Arrays.stream(File.listRoots()).map(File::getPath).sorted().collect(Collectors.toList());
+	}
+
 	@Override
 	public void runDiagnostic() {
 		LOG.info("Running diagnostic: ");
-		LOG.info(CMD_LOGICAL_DISKS);
-		LOG.info(ExecCommand.exec(CMD_LOGICAL_DISKS));
-		LOG.info(CMD_DRIVES);
-		LOG.info(ExecCommand.exec(CMD_DRIVES));
+		LOG.info(DRIVES_SCRIPT);
+		LOG.info(ExecCommand.exec(CMD_DRIVES_TABLE));
 		LOG.info("Reading registry: " + REGISTRY_LOCATION);
 		LOG.info(String.join("\n", WindowsReqistry.readLocation(REGISTRY_LOCATION).toArray(new String[0])));
 	}
@@ -1,7 +1,12 @@
 package net.util.usb.port.windows;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import net.util.usb.port.utils.ExecCommand;
@@ -31,6 +36,55 @@ public class WindowsReqistry {
 			return null;
 		}
 	}
+	/**
+	 * Reads value from location and all its subkeys with one query
+	 *
+	 * @param location
+	 *            path in the registry
+	 * @param key
+	 *            registry key
+	 * @return registry value by subkey path in lower case (hkey_local_machine\system\...), empty if nothing is found
+	 */
+	public static final Map<String, String> readValues(String location, String key) {
+		try {
+			return parseValues(ExecCommand.exec("reg query \"" + location + "\" /s /v " + key), key);
+		} catch (Exception e) {
+			return new HashMap<>();
+		}
+	}
+
+	/**
+	 * @param output output of reg query /s /v, i.e.
+	 * <pre>
+	 * HKEY_LOCAL_MACHINE\SYSTEM\CurrentControlSet\Enum\USBSTOR\Disk&amp;Ven_SanDisk\4C530001&amp;0
+	 *     ContainerID    REG_SZ    {5e4f3c2a-...}
+	 * </pre>
+	 */
+	static Map<String, String> parseValues(String output, String key) {
+		Map<String, String> values = new HashMap<>();
+		String subkey = null;
+		for (String line : output.split("\r?\n")) {
+			if (line.startsWith("HKEY_")) {
+				subkey = line.trim().toLowerCase();
+			} else if (subkey != null && line.trim().startsWith(key)) {
+				String[] parsed = line.trim().split("\t|(    )");
+				values.put(subkey, parsed[parsed.length - 1].trim());
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Exports location with all subkeys to .reg file (UTF-16LE)
+	 * @throws IOException if nothing has been exported
+	 */
+	public static final void export(String location, Path regFile) throws IOException {
+		ExecCommand.exec(new String[] { "reg", "export", location, regFile.toString(), "/y" });
+		if (!Files.exists(regFile) || Files.size(regFile) == 0) {
+			throw new IOException("Can't export registry location " + location);
+		}
+	}
+
 	public static final List<String> readLocation(String location) {
 		try {
 			String output = ExecCommand.exec("reg query \"" + location + "\"");
@@ -0,0 +1,94 @@
+package net.util.usb;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.util.usb.metrics.DetectorMetrics;
+import net.util.usb.port.linux.UdevMonitorTest;
+
+public class PollingJobUdevTest {
+
+	private ScheduledExecutorService scheduler;
+
+	private DetectorMetrics metrics;
+
+	private PollingJob job;
+
+	private Path dir;
+
+	@Before
+	public void setUp() throws Exception {
+		assumeTrue(SystemUtils.IS_OS_LINUX);
+		scheduler = Executors.newSingleThreadScheduledExecutor();
+		metrics = new DetectorMetrics();
+		job = new PollingJob(scheduler, metrics);
+		//checks are made only by udev events
+		job.setPollingInterval(TimeUnit.HOURS.toMillis(1));
+		job.addEventListener(event -> {
+		});
+		dir = Files.createTempDirectory("polling-udev");
+	}
+
+	@After
+	public void tearDown() {
+		if (job != null) {
+			job.close();
+			scheduler.shutdownNow();
+		}
+	}
+
+	@Test
+	public void eventsTriggerChecks() throws Exception {
+		job.setUdevCommand(Arrays.asList("/bin/sh", UdevMonitorTest.recordedScript(dir, 3000).toString()));
+		job.setUdevEnabled(true);
+		job.start();
+
+		//roots are checked every 50 ms for 2 s after an event
+		Thread.sleep(1000);
+		assertTrue(metrics.getPollDuration().getCount() >= 10);
+	}
+
+	@Test
+	public void idleMonitorDoesNotPoll() throws Exception {
+		Path script = dir.resolve("idle.sh");
+		Files.write(script, Arrays.asList("sleep 3"));
+		job.setUdevCommand(Arrays.asList("/bin/sh", script.toString()));
+		job.setUdevEnabled(true);
+		job.start();
+
+		Thread.sleep(1000);
+		assertTrue(metrics.getPollDuration().getCount() <= 3);
+	}
+
+	@Test
+	public void monitorIsRestartedAfterDeath() throws Exception {
+		job.setUdevCommand(Arrays.asList("/bin/sh", UdevMonitorTest.recordedScript(dir, 0).toString()));
+		job.setUdevEnabled(true);
+		job.start();
+
+		Path starts = dir.resolve("starts");
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		List<String> lines = null;
+		while (System.nanoTime() < deadline) {
+			lines = Files.exists(starts) ? Files.readAllLines(starts) : null;
+			if (lines != null && lines.size() >= 2) {
+				break;
+			}
+			Thread.sleep(50);
+		}
+		assertTrue(lines != null && lines.size() >= 2);
+	}
+}
@@ -0,0 +1,94 @@
+package net.util.usb.port.linux;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import net.util.usb.port.linux.UdevMonitor.UdevEvent;
+
+public class UdevMonitorTest {
+
+	static final String RECORDED = "udevadm-monitor.txt";
+
+	/**
+	 * @return sh script which prints recorded output, then waits and exits
+	 */
+	public static Path recordedScript(Path dir, long sleepMillis) throws Exception {
+		Path output = dir.resolve(RECORDED);
+		try (InputStream in = UdevMonitorTest.class.getResourceAsStream(RECORDED)) {
+			Files.copy(in, output, StandardCopyOption.REPLACE_EXISTING);
+		}
+		Path script = dir.resolve("udevadm.sh");
+		Files.write(script, Arrays.asList(
+				"echo started >> '" + dir.resolve("starts") + "'",
+				"cat '" + output + "'",
+				"sleep " + sleepMillis / 1000.0));
+		return script;
+	}
+
+	static boolean hasShell() {
+		return new File("/bin/sh").canExecute();
+	}
+
+	@Test
+	public void readsRecordedOutput() throws Exception {
+		List<UdevEvent> events = new ArrayList<>();
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(getClass().getResourceAsStream(RECORDED), StandardCharsets.UTF_8))) {
+			UdevMonitor.read(reader, events::add);
+		}
+
+		assertEquals(3, events.size());
+		assertEquals("add", events.get(0).getAction());
+		assertEquals("disk", events.get(0).getDevType());
+		assertEquals("/dev/sdb", events.get(0).getDevName());
+		assertEquals("SanDisk_Ultra_4C530001230515118263-0:0", events.get(0).getProperty("ID_SERIAL"));
+		assertEquals("partition", events.get(1).getDevType());
+		assertEquals("1234-ABCD", events.get(1).getProperty("ID_FS_UUID"));
+		assertEquals("remove", events.get(2).getAction());
+		assertEquals("/dev/sdb1", events.get(2).getDevName());
+	}
+
+	@Test
+	public void restartsDeadProcess() throws Exception {
+		assumeTrue(hasShell());
+		Path dir = Files.createTempDirectory("udev-monitor");
+		Path script = recordedScript(dir, 0);
+
+		CountDownLatch events = new CountDownLatch(6);
+		CountDownLatch stopped = new CountDownLatch(2);
+		try (UdevMonitor monitor = new UdevMonitor(Arrays.asList("/bin/sh", script.toString()), new UdevMonitor.Listener() {
+			@Override
+			public void event(UdevEvent event) {
+				events.countDown();
+			}
+
+			@Override
+			public void stopped() {
+				stopped.countDown();
+			}
+		})) {
+			monitor.start();
+			//first restart is made after 500 ms
+			assertTrue(events.await(5, TimeUnit.SECONDS));
+			assertTrue(stopped.await(5, TimeUnit.SECONDS));
+		}
+		assertTrue(Files.readAllLines(dir.resolve("starts")).size() >= 2);
+	}
+}
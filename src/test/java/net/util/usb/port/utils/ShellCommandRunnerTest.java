@@ -0,0 +1,114 @@
+package net.util.usb.port.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.util.usb.port.utils.ShellCommandRunner.Shell;
+
+public class ShellCommandRunnerTest {
+
+	private ShellCommandRunner runner;
+
+	@Before
+	public void setUp() {
+		assumeTrue(new File("/bin/sh").canExecute());
+		runner = new ShellCommandRunner(Shell.SH, StandardCharsets.UTF_8, 2000);
+	}
+
+	@After
+	public void tearDown() {
+		if (runner != null) {
+			runner.close();
+		}
+	}
+
+	@Test
+	public void keepsTrailingLineBreak() throws Exception {
+		assertEquals("a\nb\n", runner.run(Arrays.asList("printf", "a\\nb\\n")));
+	}
+
+	@Test
+	public void outputWithoutLineBreak() throws Exception {
+		assertEquals("a b", runner.run(Arrays.asList("printf", "a b")));
+		assertEquals("", runner.run(Arrays.asList("true")));
+	}
+
+	@Test
+	public void nonzeroExitReturnsOutput() throws Exception {
+		assertEquals("x\n", runner.run(Arrays.asList("sh", "-c", "echo x; exit 3")));
+		//shell is not affected by exit code of the command
+		assertEquals("y\n", runner.run(Arrays.asList("echo", "y")));
+	}
+
+	@Test
+	public void concurrentCommandsGetOwnOutput() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<?>> results = new ArrayList<>();
+			for (int t = 0; t < 8; t++) {
+				int thread = t;
+				results.add(executor.submit(() -> {
+					for (int i = 0; i < 50; i++) {
+						String expected = thread + "-" + i;
+						assertEquals(expected + "\n", runner.run(Arrays.asList("echo", expected)));
+					}
+					return null;
+				}));
+			}
+			for (Future<?> result : results) {
+				result.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void timeoutKillsShell() throws Exception {
+		runner.setTimeout(300);
+		long started = System.nanoTime();
+		try {
+			runner.run(Arrays.asList("sleep", "5"));
+			fail("Command has not timed out");
+		} catch (CommandTimeoutException e) {
+			assertTrue((System.nanoTime() - started) / 1000000 < 3000);
+		}
+
+		//next command starts new shell
+		runner.setTimeout(2000);
+		assertEquals("ok\n", runner.run(Arrays.asList("echo", "ok")));
+	}
+
+	@Test
+	public void commandIsRunAgainAfterShellHasDied() throws Exception {
+		Path dir = Files.createTempDirectory("shell-runner");
+		Path killed = dir.resolve("killed");
+		try {
+			//first run kills its shell, second one runs in the new shell
+			String script = "if [ ! -e '" + killed + "' ]; then touch '" + killed + "'; kill -9 $PPID; exit; fi; echo again";
+			assertEquals("again\n", runner.run(Arrays.asList("sh", "-c", script)));
+			assertTrue(Files.exists(killed));
+			assertEquals("ok\n", runner.run(Arrays.asList("echo", "ok")));
+		} finally {
+			Files.deleteIfExists(killed);
+			Files.delete(dir);
+		}
+	}
+}
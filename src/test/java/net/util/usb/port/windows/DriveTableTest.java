@@ -0,0 +1,59 @@
+package net.util.usb.port.windows;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class DriveTableTest {
+
+	private static DriveTable parse(String name) throws Exception {
+		try (Reader reader = new InputStreamReader(DriveTableTest.class.getResourceAsStream(name), StandardCharsets.UTF_8)) {
+			return DriveTable.parse(reader);
+		}
+	}
+
+	@Test
+	public void parsesOutputWithBom() throws Exception {
+		DriveTable table = parse("drives.csv");
+
+		assertEquals(5, table.getDrives().size());
+		DriveTable.Drive system = table.get("c:");
+		assertEquals("\\\\.\\PHYSICALDRIVE0", system.getPhysicalDrive());
+		assertEquals(500105249280L, system.getSize());
+	}
+
+	@Test
+	public void partitionsOfOneStickHaveOneDrive() throws Exception {
+		DriveTable table = parse("drives.csv");
+
+		DriveTable.Drive first = table.get("E:");
+		DriveTable.Drive second = table.get("F:");
+		assertEquals("\\\\.\\PHYSICALDRIVE2", first.getPhysicalDrive());
+		assertEquals(first.getPhysicalDrive(), second.getPhysicalDrive());
+		assertEquals("USBSTOR\\DISK&VEN_SANDISK&PROD_ULTRA&REV_1.00\\4C530001230515118263&0", second.getPnpDeviceId());
+		assertEquals(30752000000L, second.getSize());
+	}
+
+	@Test
+	public void emptySizeIsUnknown() throws Exception {
+		DriveTable table = parse("drives.csv");
+
+		assertEquals(-1, table.get("G:").getSize());
+		assertNull(table.get("H:"));
+	}
+
+	@Test
+	public void columnsAreFoundByName() throws Exception {
+		DriveTable table = DriveTable.parse(new StringReader("\uFEFF\"PNPDeviceID\",\"Letter\",\"Drive\"\r\n"
+				+ "\"USBSTOR\\DISK&VEN_KINGSTON\\1\",\"E:\",\"\\\\.\\PHYSICALDRIVE1\"\r\n"));
+
+		assertEquals("\\\\.\\PHYSICALDRIVE1", table.get("E:").getPhysicalDrive());
+		assertEquals(-1, table.get("E:").getSize());
+	}
+}
@@ -0,0 +1,50 @@
+package net.util.usb.port.windows;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.Test;
+
+import net.util.usb.port.DeviceInfo;
+
+public class RegistryIndexTest {
+
+	private static Path fixture(String name) throws URISyntaxException {
+		return Paths.get(RegistryIndexTest.class.getResource(name).toURI());
+	}
+
+	@Test
+	public void parsesExport() throws Exception {
+		RegistryIndex index = RegistryIndex.parse(fixture("enum-usb.reg"));
+
+		assertEquals("Port_#0004.Hub_#0001", index.findLocation("{5E4F3C2A-9B1D-5A7E-8C6F-1D2E3F4A5B6C}"));
+		assertEquals("Port_#0003.Hub_#0002", index.findLocation("{c1d2e3f4-a5b6-57c8-9d0e-1f2a3b4c5d6e}"));
+		//root hub has empty location, device without location is not indexed
+		assertEquals("", index.findLocation("{00000000-0000-0000-ffff-ffffffffffff}"));
+		assertNull(index.findLocation("{99999999-8888-7777-6666-555555555555}"));
+		assertNull(index.findLocation("{00000000-0000-0000-0000-000000000000}"));
+		assertEquals(4, index.getDevices().size());
+	}
+
+	@Test
+	public void readsIdsFromKey() throws Exception {
+		RegistryIndex index = RegistryIndex.parse(fixture("enum-usb.reg"));
+
+		DeviceInfo stick = index.findDevice("{5e4f3c2a-9b1d-5a7e-8c6f-1d2e3f4a5b6c}");
+		assertEquals("0781", stick.getVendorId());
+		assertEquals("5567", stick.getProductId());
+		assertEquals("4C530001230515118263", stick.getSerialNumber());
+
+		//interface of composite device has the same container, parent device comes first
+		DeviceInfo composite = index.findDevice("{7a1b2c3d-4e5f-11e9-8647-d663bd873d93}");
+		assertEquals("Port_#0002.Hub_#0001", composite.getPort());
+		assertEquals("046d", composite.getVendorId());
+		assertEquals("c52b", composite.getProductId());
+		//generated instance id is not a serial number
+		assertNull(composite.getSerialNumber());
+	}
+}
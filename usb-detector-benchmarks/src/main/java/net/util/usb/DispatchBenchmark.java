@@ -0,0 +1,125 @@
+package net.util.usb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.util.usb.USBEventType.DeviceEventType;
+import net.util.usb.port.PortDetector;
+
+/**
+ * End-to-end path through UsbDetector: roots are connected and disconnected, ports are detected
+ * by stub detector on resolver threads and events are delivered to listeners through their queues.
+ * One operation is connect + disconnect of all roots, it ends when the last listener got the last event
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+
+	@Param({ "1", "10", "50" })
+	private int roots;
+
+	@Param({ "1", "4" })
+	private int listeners;
+
+	private Path dir;
+
+	private File[] devices;
+
+	private UsbDetector detector;
+
+	private PollingJob job;
+
+	private volatile CountDownLatch pending;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		//port resolver checks that root exists
+		dir = Files.createTempDirectory("usb-detector-bench");
+		devices = new File[roots];
+		for (int i = 0; i < roots; i++) {
+			devices[i] = Files.createDirectory(dir.resolve("DEVICE " + i)).toFile();
+		}
+
+		detector = UsbDetector.builder()
+				.portDetector(new StubPortDetector())
+				//polling should not touch roots during measurement
+				.pollingStrategy(PollingStrategy.fixed(TimeUnit.HOURS.toMillis(1)))
+				.portCache(null)
+				.coalesceWindow(0)
+				.build();
+		for (int i = 0; i < listeners; i++) {
+			detector.addEventListener(event -> {
+				if (event.getType() == DeviceEventType.CONNECTED || event.getType() == DeviceEventType.REMOVED) {
+					pending.countDown();
+				}
+			});
+		}
+		pending = new CountDownLatch(0);
+		detector.start();
+
+		//first check lists real roots, they are dropped before measurement
+		Thread.sleep(500);
+		job = detector.getDeviceDetector();
+		job.detectDevice(new File[0]);
+		Thread.sleep(500);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		detector.close();
+		for (File device : devices) {
+			Files.deleteIfExists(device.toPath());
+		}
+		Files.deleteIfExists(dir);
+	}
+
+	@Benchmark
+	public void connectDisconnect() throws InterruptedException {
+		pending = new CountDownLatch(roots * listeners);
+		job.detectDevice(devices.clone());
+		await();
+
+		pending = new CountDownLatch(roots * listeners);
+		job.detectDevice(new File[0]);
+		await();
+	}
+
+	private void await() throws InterruptedException {
+		if (!pending.await(10, TimeUnit.SECONDS)) {
+			throw new IllegalStateException("Events have not been delivered, left: " + pending.getCount());
+		}
+	}
+
+	private static class StubPortDetector extends PortDetector {
+		@Override
+		public String getDeviceUSBPortLocation(File file) {
+			return "1-" + file.getName().hashCode();
+		}
+
+		@Override
+		public void runDiagnostic() {
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package net.util.usb;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Diff of roots as done on every poll: unchanged listing (steady state) and listing with one root replaced
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PollingJobBenchmark {
+
+	@Param({ "1", "10", "100", "500" })
+	private int roots;
+
+	private PollingJob job;
+
+	private File[] current;
+
+	private File[] changed;
+
+	/**
+	 * listing as returned by OS, it is copied before each call since diff sorts it in place
+	 */
+	private File[] listing;
+
+	private boolean odd;
+
+	@Setup(Level.Trial)
+	public void setUp(Blackhole blackhole) {
+		job = new PollingJob();
+		job.addEventListener(blackhole::consume);
+
+		current = new File[roots];
+		for (int i = 0; i < roots; i++) {
+			current[i] = new File("/Volumes/DEVICE " + i);
+		}
+		changed = current.clone();
+		changed[roots / 2] = new File("/Volumes/OTHER");
+
+		listing = new File[roots];
+		job.detectDevice(current.clone());
+	}
+
+	@Benchmark
+	public void unchanged() {
+		System.arraycopy(current, 0, listing, 0, roots);
+		job.detectDevice(listing);
+	}
+
+	@Benchmark
+	public void oneChanged() {
+		odd = !odd;
+		System.arraycopy(odd ? changed : current, 0, listing, 0, roots);
+		job.detectDevice(listing);
+	}
+}
@@ -0,0 +1,128 @@
+package net.util.usb.port.macos;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing of synthetic system_profiler SPUSBDataType -xml output with tree of hubs.
+ * Every hub has {@code fanOut} ports, leaves are mass storage devices with one volume
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProfilerBenchmark {
+
+	@Param({ "1", "3", "5" })
+	private int depth;
+
+	@Param({ "4" })
+	private int fanOut;
+
+	private String plist;
+
+	private byte[] plistBytes;
+
+	/**
+	 * mount point of the last device in the output, worst case for lookup
+	 */
+	private String lastVolume;
+
+	private int volumes;
+
+	private final OSXPortDetector detector = new OSXPortDetector() {
+		@Override
+		protected String executeDiskUtil(String deviceName) {
+			return "";
+		}
+	};
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		StringBuilder xml = new StringBuilder();
+		xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+				.append("<!DOCTYPE plist PUBLIC \"-//Apple//DTD PLIST 1.0//EN\" \"http://www.apple.com/DTDs/PropertyList-1.0.dtd\">\n")
+				.append("<plist version=\"1.0\">\n<array>\n<dict>\n<key>_items</key>\n<array>\n");
+		hub(xml, 0x14000000L, 1);
+		xml.append("</array>\n<key>_name</key>\n<string>SPUSBDataType</string>\n</dict>\n</array>\n</plist>\n");
+
+		plist = xml.toString();
+		plistBytes = plist.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private void hub(StringBuilder xml, long location, int level) {
+		for (int port = 1; port <= fanOut; port++) {
+			long child = location | ((long) port << (24 - 4 * level));
+			if (level < depth) {
+				xml.append("<dict>\n<key>_name</key>\n<string>USB3.0 Hub</string>\n<key>_items</key>\n<array>\n");
+				hub(xml, child, level + 1);
+				xml.append("</array>\n");
+				location(xml, child);
+				xml.append("<key>product_id</key>\n<string>0x0612</string>\n</dict>\n");
+			} else {
+				device(xml, child);
+			}
+		}
+	}
+
+	private void device(StringBuilder xml, long location) {
+		String disk = "disk" + (volumes + 2);
+		lastVolume = "/Volumes/DEVICE " + volumes++;
+		xml.append("<dict>\n<key>Media</key>\n<array>\n<dict>\n")
+				.append("<key>_name</key>\n<string>Flash Disk</string>\n")
+				.append("<key>bsd_name</key>\n<string>").append(disk).append("</string>\n")
+				.append("<key>removable_media</key>\n<string>yes</string>\n")
+				.append("<key>size_in_bytes</key>\n<integer>15728640000</integer>\n")
+				.append("<key>volumes</key>\n<array>\n<dict>\n")
+				.append("<key>_name</key>\n<string>DEVICE</string>\n")
+				.append("<key>bsd_name</key>\n<string>").append(disk).append("s1</string>\n")
+				.append("<key>file_system</key>\n<string>MS-DOS FAT32</string>\n")
+				.append("<key>mount_point</key>\n<string>").append(lastVolume).append("</string>\n")
+				.append("</dict>\n</array>\n</dict>\n</array>\n")
+				.append("<key>_name</key>\n<string>Flash Disk</string>\n")
+				.append("<key>bcd_device</key>\n<string>1.00</string>\n");
+		location(xml, location);
+		xml.append("<key>manufacturer</key>\n<string>Generic</string>\n")
+				.append("<key>serial_num</key>\n<string>").append(Long.toHexString(location)).append("</string>\n")
+				.append("</dict>\n");
+	}
+
+	private static void location(StringBuilder xml, long location) {
+		xml.append("<key>location_id</key>\n<string>0x").append(String.format("%08x", location))
+				.append(" / ").append(location & 0xff).append("</string>\n");
+	}
+
+	/**
+	 * lookup of one mount point, parsing stops when device is found
+	 */
+	@Benchmark
+	public String findDeviceLocation() throws XMLStreamException {
+		return detector.findDeviceLocation(lastVolume, plist);
+	}
+
+	/**
+	 * full snapshot as cached by detector
+	 */
+	@Benchmark
+	public Object parseSnapshot() throws XMLStreamException {
+		return ProfilerParser.parse(new ByteArrayInputStream(plistBytes));
+	}
+}
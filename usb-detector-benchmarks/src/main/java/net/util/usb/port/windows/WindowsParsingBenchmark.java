@@ -0,0 +1,110 @@
+package net.util.usb.port.windows;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing of drives table (CSV from PowerShell, former wmic output) and of exported USB registry branch.
+ * Fixtures have the same shape as output captured on Windows 10, values are generated
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WindowsParsingBenchmark {
+
+	/**
+	 * count of devices ever connected, registry keeps all of them
+	 */
+	@Param({ "10", "100", "1000" })
+	private int devices;
+
+	private String drivesCsv;
+
+	private String registry;
+
+	private Path registryFile;
+
+	private String lastContainer;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		StringBuilder csv = new StringBuilder("\"Letter\",\"Drive\",\"PNPDeviceID\"\r\n");
+		//only connected drives have letters
+		for (int i = 0; i < Math.min(devices, 23); i++) {
+			csv.append("\"").append((char) ('D' + i)).append(":\",\"\\\\.\\PHYSICALDRIVE").append(i + 1)
+					.append("\",\"USBSTOR\\DISK&VEN_GENERIC&PROD_FLASH_DISK&REV_8.07\\").append(serial(i)).append("&0\"\r\n");
+		}
+		drivesCsv = csv.toString();
+
+		StringBuilder reg = new StringBuilder("\uFEFFWindows Registry Editor Version 5.00\r\n\r\n");
+		for (int i = 0; i < devices; i++) {
+			lastContainer = "{" + new UUID(i, devices).toString() + "}";
+			reg.append("[HKEY_LOCAL_MACHINE\\SYSTEM\\CurrentControlSet\\Enum\\USB\\VID_0781&PID_5567\\").append(serial(i)).append("]\r\n")
+					.append("\"DeviceDesc\"=\"@usb.inf,%usb.devicedesc%;USB Mass Storage Device\"\r\n")
+					.append("\"Capabilities\"=dword:00000084\r\n")
+					.append("\"HardwareID\"=hex(7):55,00,53,00,42,00,5c,00,56,00,49,00,44,00,00,00,00,00\r\n")
+					.append("\"ContainerID\"=\"").append(lastContainer).append("\"\r\n")
+					.append("\"Service\"=\"USBSTOR\"\r\n")
+					.append("\"LocationInformation\"=\"Port_#000").append(i % 8 + 1).append(".Hub_#000").append(i % 4 + 1).append("\"\r\n")
+					.append("\r\n")
+					.append("[HKEY_LOCAL_MACHINE\\SYSTEM\\CurrentControlSet\\Enum\\USB\\VID_0781&PID_5567\\").append(serial(i))
+					.append("\\Device Parameters]\r\n")
+					.append("\"SymbolicName\"=\"\\\\??\\\\USB#VID_0781&PID_5567#").append(serial(i)).append("\"\r\n")
+					.append("\r\n");
+		}
+		registry = reg.toString();
+
+		//reg export writes UTF-16LE
+		registryFile = Files.createTempFile("usb-detector-bench", ".reg");
+		Files.write(registryFile, registry.getBytes(StandardCharsets.UTF_16LE));
+	}
+
+	private static String serial(int i) {
+		return String.format("4C53%08X", i);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(registryFile);
+	}
+
+	@Benchmark
+	public Object parseDrives() throws IOException {
+		return DriveTable.parse(new StringReader(drivesCsv));
+	}
+
+	@Benchmark
+	public Object parseRegistry() {
+		return RegistryIndex.parse(registry);
+	}
+
+	/**
+	 * the way detector reads export: export read to heap, lookup of one container
+	 */
+	@Benchmark
+	public String parseRegistryFile() throws IOException {
+		return RegistryIndex.parse(registryFile).findLocation(lastContainer);
+	}
+}